@@ -0,0 +1,105 @@
+package org.sakaiproject.gradebookng.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sakaiproject.gradebookng.business.GradeMatrixCache;
+import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
+import org.sakaiproject.gradebookng.business.RequestCache;
+import org.sakaiproject.gradebookng.tool.model.StudentGrades;
+
+/**
+ * Measures building the grade matrix for gradebooks of various shapes, with each of the grade loading strategies.
+ * 
+ * Each invocation is wrapped in a request scope so the per request memoisation behaves as it does in the tool.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GradeMatrixBenchmark {
+
+	@Param({"50", "500", "5000"})
+	private int students;
+	
+	@Param({"10", "50", "200"})
+	private int items;
+	
+	@Param({"bulk", "cell", "parallel"})
+	private String mode;
+	
+	private GradebookNgBusinessService businessService;
+	private GradeMatrixCache cache;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		StubGradebook gradebook = new StubGradebook(this.students, this.items);
+		this.businessService = gradebook.createBusinessService(this.mode);
+		this.cache = new GradeMatrixCache();
+		this.businessService.setGradeMatrixCache(this.cache);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.businessService.destroy();
+	}
+	
+	@Setup(Level.Invocation)
+	public void beginRequest() {
+		RequestCache.begin();
+	}
+	
+	@TearDown(Level.Invocation)
+	public void endRequest() {
+		RequestCache.end();
+	}
+	
+	/**
+	 * Full build from the gradebook service, as on the first page view
+	 */
+	@Benchmark
+	public List<StudentGrades> buildUncached() {
+		this.cache.clear();
+		return this.businessService.buildGradeMatrix();
+	}
+	
+	/**
+	 * Build served from the grade matrix cache, as on subsequent page views
+	 */
+	@Benchmark
+	public List<StudentGrades> buildCached() {
+		return this.businessService.buildGradeMatrix();
+	}
+	
+	/**
+	 * A single page of the grid, as loaded by the data provider
+	 */
+	@Benchmark
+	public List<StudentGrades> buildFirstPage() {
+		this.cache.clear();
+		return this.businessService.buildGradeMatrix(0, 50);
+	}
+	
+	@Benchmark
+	public Map<String,String> courseGrades() {
+		return this.businessService.getCourseGrades();
+	}
+	
+}
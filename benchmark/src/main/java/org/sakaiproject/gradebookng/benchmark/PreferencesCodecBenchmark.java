@@ -0,0 +1,66 @@
+package org.sakaiproject.gradebookng.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sakaiproject.gradebookng.business.UserPreferencesCodec;
+import org.sakaiproject.gradebookng.business.XmlMarshaller;
+import org.sakaiproject.gradebookng.business.dto.GradebookUserPreferences;
+
+/**
+ * Compares the compact user preferences format with the JAXB form it replaced.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PreferencesCodecBenchmark {
+
+	private GradebookUserPreferences prefs;
+	private String xml;
+	private String encoded;
+	
+	@Setup
+	public void setup() throws JAXBException {
+		this.prefs = new GradebookUserPreferences("a3f2c9e0-5d1b-4c7e-9a8f-2b6d4e1c0f77");
+		this.prefs.setSiteId(StubGradebook.SITE_ID);
+		this.prefs.setSortOrder(2);
+		this.xml = XmlMarshaller.marshal(this.prefs);
+		this.encoded = UserPreferencesCodec.encode(this.prefs);
+	}
+	
+	@Benchmark
+	public String xmlMarshal() throws JAXBException {
+		return XmlMarshaller.marshal(this.prefs);
+	}
+	
+	@Benchmark
+	public Object xmlUnmarshal() throws JAXBException {
+		return XmlMarshaller.unmarshall(this.xml);
+	}
+	
+	@Benchmark
+	public String codecEncode() {
+		return UserPreferencesCodec.encode(this.prefs);
+	}
+	
+	@Benchmark
+	public GradebookUserPreferences codecDecode() {
+		return UserPreferencesCodec.decode(this.encoded);
+	}
+	
+}
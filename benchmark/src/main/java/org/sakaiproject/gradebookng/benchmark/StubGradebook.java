@@ -0,0 +1,319 @@
+package org.sakaiproject.gradebookng.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.sakaiproject.gradebookng.business.GradeMatrixCache;
+import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
+import org.sakaiproject.gradebookng.business.GradebookVersions;
+import org.sakaiproject.gradebookng.business.RosterCache;
+import org.sakaiproject.service.gradebook.shared.Assignment;
+import org.sakaiproject.service.gradebook.shared.GradeDefinition;
+import org.sakaiproject.service.gradebook.shared.GradebookService;
+import org.sakaiproject.site.api.Site;
+import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.tool.api.Placement;
+import org.sakaiproject.tool.api.SessionManager;
+import org.sakaiproject.tool.api.ToolManager;
+import org.sakaiproject.tool.gradebook.Gradebook;
+import org.sakaiproject.user.api.User;
+import org.sakaiproject.user.api.UserDirectoryService;
+
+/**
+ * An in memory gradebook of a given shape, with stub Sakai services over it so the business service can be run outside of Sakai.
+ * 
+ * The stubs are dynamic proxies that implement only the methods the business service uses, anything else throws.
+ *
+ */
+public class StubGradebook {
+
+	public static final String SITE_ID = "benchmark-site";
+	
+	private final List<User> students = new ArrayList<User>();
+	
+	private final List<Assignment> assignments = new ArrayList<Assignment>();
+	
+	//uuid to assignment id to grade
+	private final Map<String,Map<Long,String>> grades = new HashMap<String,Map<Long,String>>();
+	
+	private final Map<String,String> calculatedCourseGrades = new HashMap<String,String>();
+	private final Map<String,String> enteredCourseGrades = new HashMap<String,String>();
+	
+	private final Map<String,User> users = new HashMap<String,User>();
+	private final User instructor;
+	
+	/**
+	 * @param studentCount number of students
+	 * @param assignmentCount number of assignments
+	 */
+	public StubGradebook(int studentCount, int assignmentCount) {
+		Random random = new Random(studentCount * 31 + assignmentCount);
+		
+		for(int i = 0; i < assignmentCount; i++) {
+			Assignment assignment = new Assignment();
+			assignment.setId(Long.valueOf(1000 + i));
+			assignment.setName("Assignment " + i);
+			assignment.setPoints(10.0);
+			assignment.setDueDate(new Date());
+			this.assignments.add(assignment);
+		}
+		
+		String[] letters = {"A", "B", "C", "D", "F"};
+		for(int i = 0; i < studentCount; i++) {
+			User student = user("student" + i, "s" + i, "First" + i, "Last" + (studentCount - i));
+			this.students.add(student);
+			this.users.put(student.getId(), student);
+			
+			//most cells are graded, a few are not
+			Map<Long,String> studentGrades = new HashMap<Long,String>();
+			for(Assignment assignment: this.assignments) {
+				if(random.nextInt(10) > 0) {
+					studentGrades.put(assignment.getId(), String.valueOf((double) random.nextInt(11)));
+				}
+			}
+			this.grades.put(student.getId(), studentGrades);
+			
+			this.calculatedCourseGrades.put(student.getId(), letters[random.nextInt(letters.length)]);
+			if(random.nextInt(20) == 0) {
+				this.enteredCourseGrades.put(student.getId(), "A+");
+			}
+		}
+		
+		this.instructor = user("instructor", "instructor", "Ina", "Structor");
+		this.users.put(this.instructor.getId(), this.instructor);
+	}
+	
+	/**
+	 * Create a business service wired to the stub services, with the given loading strategy
+	 * 
+	 * @param mode one of bulk, cell or parallel
+	 * @return
+	 */
+	public GradebookNgBusinessService createBusinessService(String mode) {
+		GradebookNgBusinessService service = new GradebookNgBusinessService();
+		GradeMatrixCache gradeMatrixCache = new GradeMatrixCache();
+		GradebookVersions gradebookVersions = new GradebookVersions();
+		RosterCache rosterCache = new RosterCache();
+		rosterCache.setSiteService(siteService());
+		rosterCache.setUserDirectoryService(userDirectoryService());
+		rosterCache.setGradeMatrixCache(gradeMatrixCache);
+		rosterCache.setGradebookVersions(gradebookVersions);
+		rosterCache.init();
+		
+		service.setGradebookService(gradebookService());
+		service.setSiteService(siteService());
+		service.setUserDirectoryService(userDirectoryService());
+		service.setRosterCache(rosterCache);
+		service.setGradebookVersions(gradebookVersions);
+		service.setToolManager(toolManager());
+		service.setSessionManager(stub(SessionManager.class, new Answer() {
+			@Override
+			public Object answer(Method method, Object[] args) {
+				//no session outside of Sakai
+				return null;
+			}
+		}));
+		service.setThreadLocalManager(stub(ThreadLocalManager.class, new Answer() {
+			@Override
+			public Object answer(Method method, Object[] args) {
+				return null;
+			}
+		}));
+		service.setGradeMatrixCache(gradeMatrixCache);
+		service.setBulkGradeLoading(!"cell".equals(mode));
+		service.setParallelGradeLoading("parallel".equals(mode));
+		service.init();
+		return service;
+	}
+	
+	private GradebookService gradebookService() {
+		final Gradebook gradebook = new Gradebook();
+		gradebook.setUid(SITE_ID);
+		
+		return stub(GradebookService.class, new Answer() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public Object answer(Method method, Object[] args) {
+				switch(method.getName()) {
+					case "getGradebook":
+						return gradebook;
+					case "getAssignments":
+						return new ArrayList<Assignment>(assignments);
+					case "currentUserHasGradeAllPerm":
+						return true;
+					case "getCalculatedCourseGrade":
+						return new HashMap<String,String>(calculatedCourseGrades);
+					case "getEnteredCourseGrade":
+						return new HashMap<String,String>(enteredCourseGrades);
+					case "getGradeDefinitionForStudentForItem":
+						return gradeDefinition((String) args[2], (Long) args[1]);
+					case "getGradesForStudentsForItem":
+						List<GradeDefinition> rval = new ArrayList<GradeDefinition>();
+						for(String studentUuid: (List<String>) args[2]) {
+							GradeDefinition gd = gradeDefinition(studentUuid, (Long) args[1]);
+							if(gd.getGrade() != null) {
+								rval.add(gd);
+							}
+						}
+						return rval;
+					default:
+						return unsupported(method);
+				}
+			}
+		});
+	}
+	
+	private SiteService siteService() {
+		final Set<String> studentIds = new LinkedHashSet<String>();
+		for(User student: this.students) {
+			studentIds.add(student.getId());
+		}
+		
+		final Site site = stub(Site.class, new Answer() {
+			@Override
+			public Object answer(Method method, Object[] args) {
+				switch(method.getName()) {
+					case "getId":
+						return SITE_ID;
+					case "getUsersIsAllowed":
+						return new LinkedHashSet<String>(studentIds);
+					default:
+						return unsupported(method);
+				}
+			}
+		});
+		
+		return stub(SiteService.class, new Answer() {
+			@Override
+			public Object answer(Method method, Object[] args) {
+				if("getSite".equals(method.getName())) {
+					return site;
+				}
+				return unsupported(method);
+			}
+		});
+	}
+	
+	private UserDirectoryService userDirectoryService() {
+		return stub(UserDirectoryService.class, new Answer() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public Object answer(Method method, Object[] args) {
+				switch(method.getName()) {
+					case "getCurrentUser":
+						return instructor;
+					case "getUser":
+						return users.get(args[0]);
+					case "getUsers":
+						List<User> rval = new ArrayList<User>();
+						for(String id: (Collection<String>) args[0]) {
+							User user = users.get(id);
+							if(user != null) {
+								rval.add(user);
+							}
+						}
+						return rval;
+					default:
+						return unsupported(method);
+				}
+			}
+		});
+	}
+	
+	private ToolManager toolManager() {
+		final Placement placement = stub(Placement.class, new Answer() {
+			@Override
+			public Object answer(Method method, Object[] args) {
+				if("getContext".equals(method.getName())) {
+					return SITE_ID;
+				}
+				return unsupported(method);
+			}
+		});
+		
+		return stub(ToolManager.class, new Answer() {
+			@Override
+			public Object answer(Method method, Object[] args) {
+				if("getCurrentPlacement".equals(method.getName())) {
+					return placement;
+				}
+				return unsupported(method);
+			}
+		});
+	}
+	
+	private GradeDefinition gradeDefinition(String studentUuid, Long assignmentId) {
+		GradeDefinition gd = new GradeDefinition();
+		gd.setStudentUid(studentUuid);
+		gd.setGrade(this.grades.get(studentUuid).get(assignmentId));
+		return gd;
+	}
+	
+	private static User user(final String id, final String eid, final String firstName, final String lastName) {
+		return stub(User.class, new Answer() {
+			@Override
+			public Object answer(Method method, Object[] args) {
+				switch(method.getName()) {
+					case "getId":
+						return id;
+					case "getEid":
+					case "getDisplayId":
+						return eid;
+					case "getFirstName":
+						return firstName;
+					case "getLastName":
+						return lastName;
+					case "getDisplayName":
+						return firstName + " " + lastName;
+					case "getSortName":
+						return lastName + ", " + firstName;
+					default:
+						return unsupported(method);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Answers a call to a stubbed method
+	 */
+	private interface Answer {
+		Object answer(Method method, Object[] args);
+	}
+	
+	private static <T> T stub(final Class<T> type, final Answer answer) {
+		Object proxy = Proxy.newProxyInstance(StubGradebook.class.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				//identity semantics for the Object methods
+				switch(method.getName()) {
+					case "equals":
+						return proxy == args[0];
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					case "toString":
+						return type.getSimpleName() + " stub";
+					default:
+						return answer.answer(method, args);
+				}
+			}
+		});
+		return type.cast(proxy);
+	}
+	
+	private static Object unsupported(Method method) {
+		throw new UnsupportedOperationException(method.getDeclaringClass().getSimpleName() + "." + method.getName() + " is not stubbed");
+	}
+	
+}
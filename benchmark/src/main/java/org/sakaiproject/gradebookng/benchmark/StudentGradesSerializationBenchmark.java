@@ -0,0 +1,84 @@
+package org.sakaiproject.gradebookng.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
+import org.sakaiproject.gradebookng.business.RequestCache;
+import org.sakaiproject.gradebookng.tool.model.StudentGrades;
+
+/**
+ * Measures the cost of serialising grade rows, a page worth as stored with the page and the whole matrix.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class StudentGradesSerializationBenchmark {
+
+	@Param({"500", "5000"})
+	private int students;
+	
+	@Param({"50", "200"})
+	private int items;
+	
+	private List<StudentGrades> page;
+	private List<StudentGrades> matrix;
+	
+	@Setup
+	public void setup() {
+		GradebookNgBusinessService businessService = new StubGradebook(this.students, this.items).createBusinessService("bulk");
+		RequestCache.begin();
+		try {
+			this.matrix = new ArrayList<StudentGrades>(businessService.buildGradeMatrix());
+			this.page = new ArrayList<StudentGrades>(this.matrix.subList(0, Math.min(50, this.matrix.size())));
+		} finally {
+			RequestCache.end();
+			businessService.destroy();
+		}
+	}
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		//the sizes are as interesting as the times
+		System.out.println("page: " + serialise(this.page) + " bytes, matrix: " + serialise(this.matrix) + " bytes");
+	}
+	
+	@Benchmark
+	public int serialisePage() throws IOException {
+		return serialise(this.page);
+	}
+	
+	@Benchmark
+	public int serialiseMatrix() throws IOException {
+		return serialise(this.matrix);
+	}
+	
+	private static int serialise(Object object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(object);
+		out.close();
+		return bytes.size();
+	}
+	
+}
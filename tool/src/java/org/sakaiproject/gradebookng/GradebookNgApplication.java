@@ -1,12 +1,22 @@
 package org.sakaiproject.gradebookng;
 
+import org.apache.log4j.Logger;
+import org.apache.wicket.core.request.handler.IPageClassRequestHandler;
+import org.apache.wicket.injection.Injector;
 import org.apache.wicket.protocol.http.WebApplication;
 import org.apache.wicket.request.IRequestHandler;
 import org.apache.wicket.request.Url;
 import org.apache.wicket.request.cycle.IRequestCycleListener;
 import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.request.resource.IResource;
+import org.apache.wicket.request.resource.ResourceReference;
+import org.apache.wicket.spring.injection.annot.SpringBean;
 import org.apache.wicket.spring.injection.annot.SpringComponentInjector;
+import org.sakaiproject.gradebookng.business.GradebookNgMetrics;
+import org.sakaiproject.gradebookng.business.RequestCache;
+import org.sakaiproject.gradebookng.business.RequestMetrics;
 import org.sakaiproject.gradebookng.tool.pages.GradebookPage;
+import org.sakaiproject.gradebookng.tool.resources.GradeMatrixJsonResource;
 
 import de.agilecoders.wicket.core.Bootstrap;
 import de.agilecoders.wicket.core.settings.BootstrapSettings;
@@ -18,6 +28,11 @@ import de.agilecoders.wicket.core.settings.BootstrapSettings;
  *
  */
 public class GradebookNgApplication extends WebApplication {    
+	
+	private static final Logger log = Logger.getLogger(GradebookNgApplication.class);
+	
+	@SpringBean(name="org.sakaiproject.gradebookng.business.GradebookNgMetrics")
+	private GradebookNgMetrics metrics;
    
 	@Override
 	protected void init() {
@@ -39,6 +54,10 @@ public class GradebookNgApplication extends WebApplication {
 		//getApplicationSettings().setPageExpiredErrorPage(FirstPage.class);
 		//getApplicationSettings().setAccessDeniedPage(FirstPage.class);
 
+		//Record the size of every page that is serialised
+		Injector.get().inject(this);
+		getFrameworkSettings().setSerializer(new MeasuringSerializer(getFrameworkSettings().getSerializer(), this.metrics));
+
         getRequestCycleListeners().add(new IRequestCycleListener() {
 
             //public void onBeginRequest() {
@@ -53,16 +72,26 @@ public class GradebookNgApplication extends WebApplication {
 	            // optionally do something here when there's an exception
 	            // then, return the appropriate IRequestHandler, or "null"
 	            // to let another listener handle the exception
-                ex.printStackTrace();
+            	metrics.increment("request.exceptions");
+            	log.error("An error occurred handling " + cycle.getRequest().getUrl(), ex);
                 return null;
             }
 
             @Override
             public void onBeginRequest(RequestCycle arg0) {
+            	//lookups made by the business service are shared for the rest of the request
+            	RequestCache.begin();
+            	RequestMetrics.begin();
             }
 
             @Override
             public void onDetach(RequestCycle arg0) {
+            	RequestCache.end();
+            	
+            	RequestMetrics requestMetrics = RequestMetrics.end();
+            	if(requestMetrics != null) {
+            		metrics.record(requestMetrics);
+            	}
             }
 
             @Override
@@ -75,10 +104,26 @@ public class GradebookNgApplication extends WebApplication {
 
             @Override
             public void onRequestHandlerExecuted(RequestCycle arg0, IRequestHandler arg1) {
+            	RequestMetrics requestMetrics = RequestMetrics.get();
+            	if(requestMetrics != null) {
+            		RequestMetrics.time("request.execute", requestMetrics.getResolved());
+            	}
             }
 
             @Override
             public void onRequestHandlerResolved(RequestCycle arg0, IRequestHandler arg1) {
+            	RequestMetrics requestMetrics = RequestMetrics.get();
+            	if(requestMetrics != null) {
+            		RequestMetrics.time("request.resolve", requestMetrics.getStart());
+            		requestMetrics.setResolved(System.nanoTime());
+            		
+            		//describe the request by the page it is for, if there is one
+            		if(arg1 instanceof IPageClassRequestHandler) {
+            			requestMetrics.setDescription(((IPageClassRequestHandler) arg1).getPageClass().getSimpleName() + " " + arg0.getRequest().getUrl());
+            		} else {
+            			requestMetrics.setDescription(arg1.getClass().getSimpleName() + " " + arg0.getRequest().getUrl());
+            		}
+            	}
             }
 
             @Override
@@ -90,6 +135,16 @@ public class GradebookNgApplication extends WebApplication {
             }
         });
         
+        //read only JSON of the grade matrix, for a client side grid
+        mountResource("/grades.json", new ResourceReference(GradebookNgApplication.class, "gradeMatrixJson") {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public IResource getResource() {
+				return new GradeMatrixJsonResource();
+			}
+        });
+        
         // bootstrap
         //BootstrapSettings settings = new BootstrapSettings();
         //Bootstrap.install(this, settings);
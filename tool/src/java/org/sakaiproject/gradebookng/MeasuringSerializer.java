@@ -0,0 +1,34 @@
+package org.sakaiproject.gradebookng;
+
+import org.apache.wicket.serialize.ISerializer;
+import org.sakaiproject.gradebookng.business.GradebookNgMetrics;
+
+/**
+ * Wraps the page serializer to record the size of each serialised page
+ *
+ */
+public class MeasuringSerializer implements ISerializer {
+
+	private final ISerializer delegate;
+	private final GradebookNgMetrics metrics;
+	
+	public MeasuringSerializer(ISerializer delegate, GradebookNgMetrics metrics) {
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+	
+	@Override
+	public byte[] serialize(Object object) {
+		byte[] data = this.delegate.serialize(object);
+		if(data != null) {
+			this.metrics.recordPageSize(data.length);
+		}
+		return data;
+	}
+
+	@Override
+	public Object deserialize(byte[] data) {
+		return this.delegate.deserialize(data);
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads CSV one record at a time, so a large file never has to be held in memory.
+ * 
+ * Handles quoted fields containing commas, quotes and line breaks, either line ending, and a leading byte order mark.
+ *
+ */
+public class CsvReader implements Closeable {
+	
+	private static final int NONE = -2;
+	
+	private final Reader reader;
+	
+	//a character read ahead that has not been consumed yet
+	private int pushedBack = NONE;
+	
+	private boolean started = false;
+	
+	/**
+	 * @param reader should be buffered
+	 */
+	public CsvReader(final Reader reader) {
+		this.reader = reader;
+	}
+	
+	/**
+	 * Read the next record
+	 * 
+	 * @return the fields of the record, or null at the end of the input
+	 * @throws IOException
+	 */
+	public List<String> readRecord() throws IOException {
+		int c = read();
+		if(!this.started) {
+			this.started = true;
+			if(c == '\uFEFF') {
+				c = read();
+			}
+		}
+		if(c == -1) {
+			return null;
+		}
+		
+		List<String> record = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		
+		while(true) {
+			if(quoted) {
+				if(c == -1) {
+					//unterminated quote, take what there is
+					record.add(field.toString());
+					return record;
+				}
+				if(c == '"') {
+					int next = read();
+					if(next == '"') {
+						field.append('"');
+					} else {
+						quoted = false;
+						this.pushedBack = next;
+					}
+				} else {
+					field.append((char) c);
+				}
+			} else {
+				if(c == -1 || c == '\n') {
+					record.add(field.toString());
+					return record;
+				}
+				if(c == '\r') {
+					int next = read();
+					if(next != '\n') {
+						this.pushedBack = next;
+					}
+					record.add(field.toString());
+					return record;
+				}
+				if(c == ',') {
+					record.add(field.toString());
+					field.setLength(0);
+				} else if(c == '"' && field.length() == 0) {
+					quoted = true;
+				} else {
+					field.append((char) c);
+				}
+			}
+			c = read();
+		}
+	}
+	
+	private int read() throws IOException {
+		if(this.pushedBack != NONE) {
+			int c = this.pushedBack;
+			this.pushedBack = NONE;
+			return c;
+		}
+		return this.reader.read();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		this.reader.close();
+	}
+	
+}
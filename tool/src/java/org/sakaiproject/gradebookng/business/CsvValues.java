@@ -0,0 +1,50 @@
+package org.sakaiproject.gradebookng.business;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+
+/**
+ * Guards values in exported CSV against being run as formulas when the file is opened in a spreadsheet.
+ *
+ * A value starting with a formula character gets a leading quote, which spreadsheets show as text. Numbers are left alone,
+ * so a negative grade is still a number. The import takes the quote off again, so an export can be imported as is.
+ *
+ */
+public final class CsvValues {
+	
+	private static final String FORMULA_CHARS = "=+-@\t\r";
+	
+	private CsvValues() {
+	}
+	
+	/**
+	 * Escape a value for export
+	 *
+	 * @param value
+	 * @return the value, with a leading quote if it could be read as a formula
+	 */
+	public static String escape(final String value) {
+		if(isFormula(value)) {
+			return "'" + value;
+		}
+		return value;
+	}
+	
+	/**
+	 * Undo {@link #escape(String)} for a value that has been imported
+	 *
+	 * @param value
+	 * @return the value without the leading quote added on export
+	 */
+	public static String unescape(final String value) {
+		if(value != null && value.length() > 1 && value.charAt(0) == '\'' && isFormula(value.substring(1))) {
+			return value.substring(1);
+		}
+		return value;
+	}
+	
+	private static boolean isFormula(final String value) {
+		return StringUtils.isNotEmpty(value) && FORMULA_CHARS.indexOf(value.charAt(0)) >= 0 && !NumberUtils.isNumber(value);
+	}
+
+}
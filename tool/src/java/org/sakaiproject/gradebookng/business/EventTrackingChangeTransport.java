@@ -0,0 +1,206 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import lombok.Setter;
+import lombok.extern.apachecommons.CommonsLog;
+
+import org.sakaiproject.authz.api.AuthzGroupService;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.gradebookng.business.dto.GradebookChangeEvent;
+import org.sakaiproject.site.api.SiteService;
+
+/**
+ * {@link GradebookChangeTransport} over the Sakai event service, which already shares events between the nodes of a cluster.
+ * 
+ * A change is posted as a single {@value #EVENT} event with the change encoded in the resource, eg /gradebookng/GRADE/node/gradebookUid/student1,student2.
+ * The resource is stored in a column of {@value #MAX_RESOURCE_LENGTH} characters, so a change to more students than fit is sent as a change
+ * to the whole gradebook instead.
+ * Site and realm membership events from Sakai itself are delivered as {@link GradebookChangeEvent.Type#ROSTER} changes,
+ * so a roster change made anywhere, by any tool, reaches every node.
+ *
+ */
+@CommonsLog
+public class EventTrackingChangeTransport implements GradebookChangeTransport, Observer {
+	
+	public static final String EVENT = "gradebookng.change";
+	
+	private static final String PREFIX = "/gradebookng/";
+	
+	//the size of the resource column in the Sakai event table
+	static final int MAX_RESOURCE_LENGTH = 255;
+	
+	//events that can change who is in a site
+	private static final Set<String> MEMBERSHIP_EVENTS = new HashSet<String>(Arrays.asList(
+			SiteService.SECURE_UPDATE_SITE,
+			SiteService.SECURE_UPDATE_SITE_MEMBERSHIP,
+			AuthzGroupService.SECURE_UPDATE_AUTHZ_GROUP,
+			AuthzGroupService.SECURE_JOIN_AUTHZ_GROUP,
+			AuthzGroupService.SECURE_UNJOIN_AUTHZ_GROUP));
+	
+	@Setter
+	private EventTrackingService eventTrackingService;
+	
+	private final List<GradebookChangeListener> listeners = new CopyOnWriteArrayList<GradebookChangeListener>();
+	
+	
+	public void init() {
+		this.eventTrackingService.addObserver(this);
+	}
+	
+	public void destroy() {
+		this.eventTrackingService.deleteObserver(this);
+	}
+	
+	@Override
+	public void publish(final GradebookChangeEvent event) {
+		this.eventTrackingService.post(this.eventTrackingService.newEvent(EVENT, format(event), false));
+	}
+	
+	@Override
+	public void addListener(final GradebookChangeListener listener) {
+		this.listeners.add(listener);
+	}
+	
+	@Override
+	public void removeListener(final GradebookChangeListener listener) {
+		this.listeners.remove(listener);
+	}
+	
+	@Override
+	public void update(final Observable o, final Object arg) {
+		if(!(arg instanceof Event)) {
+			return;
+		}
+		Event event = (Event) arg;
+		
+		GradebookChangeEvent change = null;
+		if(EVENT.equals(event.getEvent())) {
+			change = parse(event.getResource());
+		} else if(MEMBERSHIP_EVENTS.contains(event.getEvent())) {
+			String siteId = getSiteId(event.getResource());
+			if(siteId != null) {
+				change = new GradebookChangeEvent(GradebookChangeEvent.Type.ROSTER, null, siteId, null);
+			}
+		}
+		if(change == null) {
+			return;
+		}
+		
+		for(GradebookChangeListener listener: this.listeners) {
+			try {
+				listener.onChange(change);
+			} catch (RuntimeException e) {
+				//don't let a listener break the event service thread
+				log.error("Error applying gradebook change " + change, e);
+			}
+		}
+	}
+	
+	/**
+	 * Encode a change as an event resource. If the students don't fit, the change is widened to the whole gradebook.
+	 * 
+	 * @param event
+	 * @return
+	 */
+	static String format(final GradebookChangeEvent event) {
+		StringBuilder resource = new StringBuilder(PREFIX);
+		resource.append(event.getType()).append('/');
+		resource.append(encode(event.getOrigin())).append('/');
+		resource.append(encode(event.getGradebookUid()));
+		
+		if(!event.isGradebookWide()) {
+			StringBuilder students = new StringBuilder();
+			for(String studentUuid: event.getStudentUuids()) {
+				students.append((students.length() == 0) ? '/' : ',').append(encode(studentUuid));
+			}
+			if(resource.length() + students.length() <= MAX_RESOURCE_LENGTH) {
+				resource.append(students);
+			}
+		}
+		return resource.toString();
+	}
+	
+	/**
+	 * Decode a change from an event resource
+	 * 
+	 * @param resource
+	 * @return the change or null if the resource is not valid
+	 */
+	static GradebookChangeEvent parse(final String resource) {
+		if(resource == null || !resource.startsWith(PREFIX)) {
+			return null;
+		}
+		String[] parts = resource.substring(PREFIX.length()).split("/");
+		if(parts.length < 3) {
+			return null;
+		}
+		try {
+			GradebookChangeEvent.Type type = GradebookChangeEvent.Type.valueOf(parts[0]);
+			
+			List<String> studentUuids = new ArrayList<String>();
+			if(parts.length > 3) {
+				//commas are encoded in the ids, so they only ever separate them
+				for(String studentUuid: parts[3].split(",")) {
+					String decoded = decode(studentUuid);
+					if(decoded != null) {
+						studentUuids.add(decoded);
+					}
+				}
+			}
+			return new GradebookChangeEvent(type, decode(parts[1]), decode(parts[2]), studentUuids);
+		} catch (IllegalArgumentException e) {
+			log.warn("Ignoring unrecognised gradebook change: " + resource);
+			return null;
+		}
+	}
+	
+	/**
+	 * Get the site id from an event resource, eg /site/SITEID or /realm//site/SITEID/group/GROUPID
+	 * 
+	 * @param resource
+	 * @return the site id or null if the resource is not for a site
+	 */
+	static String getSiteId(final String resource) {
+		if(resource == null) {
+			return null;
+		}
+		int start = resource.indexOf("/site/");
+		if(start < 0) {
+			return null;
+		}
+		start += "/site/".length();
+		int end = resource.indexOf('/', start);
+		String siteId = (end < 0) ? resource.substring(start) : resource.substring(start, end);
+		return siteId.isEmpty() ? null : siteId;
+	}
+	
+	private static String encode(final String value) {
+		try {
+			return URLEncoder.encode((value != null) ? value : "", "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private static String decode(final String value) {
+		try {
+			String decoded = URLDecoder.decode(value, "UTF-8");
+			return decoded.isEmpty() ? null : decoded;
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+}
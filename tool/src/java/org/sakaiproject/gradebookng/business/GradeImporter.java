@@ -0,0 +1,226 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.Setter;
+import lombok.extern.apachecommons.CommonsLog;
+
+import org.apache.commons.lang.StringUtils;
+import org.sakaiproject.gradebookng.business.dto.GradeImportChange;
+import org.sakaiproject.gradebookng.business.dto.GradeImportReport;
+import org.sakaiproject.gradebookng.business.dto.GradeUpdate;
+import org.sakaiproject.gradebookng.tool.model.GradeInfo;
+import org.sakaiproject.gradebookng.tool.model.StudentGrades;
+import org.sakaiproject.service.gradebook.shared.Assignment;
+
+/**
+ * Imports grades from CSV in the format written by the export: a student id (eid) in the first column,
+ * then a column per gradebook item headed by the item name. Other columns are ignored.
+ *
+ * The file is read a chunk of rows at a time. For each chunk the students are resolved in one lookup,
+ * the current grades are fetched, and each cell is compared and validated. A preview only reports what would change,
+ * a commit also saves the changes for the chunk in one batch before moving on, so the file is never held in memory.
+ *
+ * Blank cells are skipped rather than clearing the grade. Existing comments are kept.
+ * The quote the export puts in front of values that look like formulas is taken off again (see {@link CsvValues}).
+ *
+ */
+@CommonsLog
+public class GradeImporter {
+	
+	@Setter
+	private GradebookNgBusinessService businessService;
+	
+	/**
+	 * Number of rows processed at a time. Defaults to 500.
+	 */
+	@Setter
+	private int chunkSize = 500;
+	
+	/**
+	 * Number of each kind of sample kept in the report. Defaults to 100.
+	 */
+	@Setter
+	private int maxSamples = 100;
+	
+	/**
+	 * Work out what an import would change, without saving anything
+	 *
+	 * @param reader the CSV
+	 * @return the report
+	 * @throws IOException
+	 */
+	public GradeImportReport preview(final Reader reader) throws IOException {
+		return process(reader, false);
+	}
+	
+	/**
+	 * Save the changes in an import
+	 *
+	 * @param reader the CSV
+	 * @return the report, including the number of cells saved and failed
+	 * @throws IOException
+	 */
+	public GradeImportReport commit(final Reader reader) throws IOException {
+		return process(reader, true);
+	}
+	
+	private GradeImportReport process(final Reader reader, final boolean commit) throws IOException {
+		
+		GradeImportReport report = new GradeImportReport(this.maxSamples);
+		
+		CsvReader csv = new CsvReader(reader);
+		try {
+			List<String> header = csv.readRecord();
+			if(header == null) {
+				return report;
+			}
+			
+			Map<Integer, Assignment> columns = matchColumns(header, report);
+			
+			//grades are validated once per distinct value, there are usually only a few
+			Map<String, Boolean> validity = new HashMap<String, Boolean>();
+			
+			List<List<String>> chunk = new ArrayList<List<String>>(this.chunkSize);
+			List<String> record;
+			while((record = csv.readRecord()) != null) {
+				if(StringUtils.isBlank(record.get(0))) {
+					continue;
+				}
+				chunk.add(record);
+				if(chunk.size() == this.chunkSize) {
+					processChunk(chunk, columns, validity, report, commit);
+					chunk.clear();
+				}
+			}
+			if(!chunk.isEmpty()) {
+				processChunk(chunk, columns, validity, report, commit);
+			}
+		} finally {
+			csv.close();
+		}
+		
+		log.debug((commit ? "Imported grades: " : "Previewed grade import: ") + report);
+		return report;
+	}
+	
+	/**
+	 * Match the header to the gradebook items by name, exactly if possible and ignoring case otherwise
+	 *
+	 * @return map of column index to item
+	 */
+	private Map<Integer, Assignment> matchColumns(final List<String> header, final GradeImportReport report) {
+		Map<String, Assignment> byName = new HashMap<String, Assignment>();
+		Map<String, Assignment> byLowerName = new HashMap<String, Assignment>();
+		List<Assignment> assignments = this.businessService.getGradebookAssignments();
+		if(assignments != null) {
+			for(Assignment assignment: assignments) {
+				byName.put(StringUtils.trim(assignment.getName()), assignment);
+				byLowerName.put(StringUtils.lowerCase(StringUtils.trim(assignment.getName())), assignment);
+			}
+		}
+		
+		Map<Integer, Assignment> columns = new HashMap<Integer, Assignment>();
+		
+		//the first column is the student id
+		for(int i = 1; i < header.size(); i++) {
+			String name = StringUtils.trim(CsvValues.unescape(header.get(i)));
+			Assignment assignment = byName.get(name);
+			if(assignment == null) {
+				assignment = byLowerName.get(StringUtils.lowerCase(name));
+			}
+			if(assignment != null) {
+				columns.put(i, assignment);
+				report.addMatchedColumn(name);
+			} else {
+				report.addIgnoredColumn(name);
+			}
+		}
+		return columns;
+	}
+	
+	private void processChunk(final List<List<String>> chunk, final Map<Integer, Assignment> columns, final Map<String, Boolean> validity, final GradeImportReport report, final boolean commit) {
+		
+		Set<String> eids = new LinkedHashSet<String>();
+		for(List<String> record: chunk) {
+			eids.add(StringUtils.trim(CsvValues.unescape(record.get(0))));
+		}
+		
+		Map<String, StudentGrades> rows = new HashMap<String, StudentGrades>();
+		for(StudentGrades row: this.businessService.getStudentGradesByEid(eids)) {
+			//eids are matched ignoring case, see GradebookNgBusinessService.getStudentGradesByEid
+			rows.put(StringUtils.lowerCase(StringUtils.trim(row.getStudentEid())), row);
+		}
+		
+		List<GradeUpdate> updates = new ArrayList<GradeUpdate>();
+		
+		for(List<String> record: chunk) {
+			String eid = StringUtils.trim(CsvValues.unescape(record.get(0)));
+			StudentGrades row = rows.get(StringUtils.lowerCase(eid));
+			if(row == null) {
+				report.addUnknownStudent(eid);
+				continue;
+			}
+			report.addRow();
+			
+			for(Map.Entry<Integer, Assignment> column: columns.entrySet()) {
+				if(column.getKey() >= record.size()) {
+					continue;
+				}
+				String grade = StringUtils.trimToNull(CsvValues.unescape(record.get(column.getKey())));
+				if(grade == null) {
+					continue;
+				}
+				
+				Assignment assignment = column.getValue();
+				GradeInfo current = row.getGrade(assignment.getId());
+				String currentGrade = (current != null) ? current.getGrade() : null;
+				if(isSameGrade(currentGrade, grade)) {
+					report.addUnchanged();
+					continue;
+				}
+				
+				GradeImportChange change = new GradeImportChange(eid, row.getStudentName(), assignment.getName(), currentGrade, grade);
+				
+				Boolean valid = validity.get(grade);
+				if(valid == null) {
+					valid = this.businessService.isGradeValid(grade);
+					validity.put(grade, valid);
+				}
+				if(!valid) {
+					report.addInvalid(change);
+					continue;
+				}
+				
+				report.addChange(change);
+				updates.add(new GradeUpdate(assignment.getId(), row.getStudentUuid(), grade, (current != null) ? current.getGradeComment() : null));
+			}
+		}
+		
+		if(commit && !updates.isEmpty()) {
+			report.addSaveResult(this.businessService.saveGrades(updates));
+		}
+	}
+	
+	/**
+	 * Compare grades, numerically if they are both numbers so that 9 and 9.0 are the same
+	 */
+	private static boolean isSameGrade(final String current, final String grade) {
+		if(current == null) {
+			return false;
+		}
+		try {
+			return Double.compare(Double.parseDouble(current), Double.parseDouble(grade)) == 0;
+		} catch (NumberFormatException e) {
+			return StringUtils.equals(StringUtils.trim(current), grade);
+		}
+	}
+
+}
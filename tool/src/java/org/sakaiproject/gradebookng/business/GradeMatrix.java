@@ -0,0 +1,524 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.Getter;
+
+import org.sakaiproject.gradebookng.business.dto.AssignmentStatistics;
+import org.sakaiproject.gradebookng.tool.model.AssignmentIndex;
+import org.sakaiproject.gradebookng.tool.model.GradeInfo;
+import org.sakaiproject.gradebookng.tool.model.StudentGrades;
+import org.sakaiproject.service.gradebook.shared.Assignment;
+
+/**
+ * The assembled matrix of students, assignments and grades for a site, as held in the {@link GradeMatrixCache}.
+ * 
+ * Rows are never modified once they have been handed out. An update copies the affected row and swaps it in,
+ * so anything currently rendering or serialising the old row is unaffected.
+ * 
+ * Sorted views of the rows are worked out once, using collation keys for the locale, and kept until a grade they depend on changes.
+ * Sorting by student never needs to be redone as names do not change. Searches on student name and eid use a {@link StudentSearchIndex}
+ * built on the first search, which stays valid as rows never move.
+ * 
+ * Statistics for each assignment are worked out for all columns in one pass when first asked for, then kept up to date as cells change.
+ * 
+ * Changes made elsewhere (eg on another node) mark rows or the course grades stale, and the business service reloads just those
+ * before the matrix is next used. The matrix keeps the version of the gradebook it is up to date with (see {@link GradebookVersions}),
+ * so the business service can tell when it has missed a change and needs dropping.
+ *
+ */
+public class GradeMatrix {
+
+	@Getter
+	private final String siteId;
+	
+	@Getter
+	private final String gradebookUid;
+	
+	@Getter
+	private final List<Assignment> assignments;
+	
+	@Getter
+	private final AssignmentIndex assignmentIndex;
+	
+	@Getter
+	private final long created;
+	
+	//the version of the gradebook that this matrix is up to date with, see GradebookVersions. Guarded by this
+	private long gradebookVersion;
+	
+	private final List<StudentGrades> rows;
+	
+	//uuid to position in rows
+	private final Map<String,Integer> positions;
+	
+	//row positions in sorted order, keyed by sort and locale. Guarded by this
+	private final Map<String,int[]> orderings = new HashMap<String,int[]>();
+	
+	//built on the first search. Guarded by this
+	private StudentSearchIndex searchIndex;
+	
+	//built when first asked for. Guarded by this
+	private GradeStatistics statistics;
+	
+	//students whose rows were changed elsewhere, eg on another node, and need reloading. Guarded by this
+	private final Set<String> staleStudents = new HashSet<String>();
+	
+	//course grades were changed elsewhere and need reloading. Guarded by this
+	private boolean courseGradesStale;
+	
+	//students whose course grades need recalculating after one of their grades was saved here. Guarded by this
+	private final Set<String> staleCourseGrades = new HashSet<String>();
+	
+	public GradeMatrix(final String siteId, final String gradebookUid, final List<Assignment> assignments, final AssignmentIndex assignmentIndex, final List<StudentGrades> rows) {
+		this.siteId = siteId;
+		this.gradebookUid = gradebookUid;
+		this.assignments = Collections.unmodifiableList(new ArrayList<Assignment>(assignments));
+		this.assignmentIndex = assignmentIndex;
+		this.rows = new ArrayList<StudentGrades>(rows);
+		this.created = System.currentTimeMillis();
+		
+		this.positions = new HashMap<String,Integer>();
+		for(int i = 0; i < this.rows.size(); i++) {
+			this.positions.put(this.rows.get(i).getStudentUuid(), i);
+		}
+	}
+	
+	/**
+	 * Get the version of the gradebook that this matrix is up to date with
+	 * @return
+	 */
+	public synchronized long getGradebookVersion() {
+		return this.gradebookVersion;
+	}
+	
+	/**
+	 * Set the version of the gradebook that this matrix is up to date with, once it has been built or brought up to date
+	 * @param gradebookVersion
+	 */
+	public synchronized void setGradebookVersion(final long gradebookVersion) {
+		this.gradebookVersion = gradebookVersion;
+	}
+	
+	/**
+	 * Move this matrix on to a new version of the gradebook after a change has been applied to it,
+	 * but only if it was up to date with the version before. Otherwise it has missed a change and stays behind.
+	 * 
+	 * @param from the version before the change
+	 * @param to the version after the change
+	 * @return true if the matrix moved on
+	 */
+	public synchronized boolean advanceGradebookVersion(final long from, final long to) {
+		if(this.gradebookVersion != from) {
+			return false;
+		}
+		this.gradebookVersion = to;
+		return true;
+	}
+	
+	/**
+	 * Get a snapshot of the rows in roster order
+	 * @return
+	 */
+	public synchronized List<StudentGrades> getStudentGrades() {
+		return new ArrayList<StudentGrades>(this.rows);
+	}
+	
+	/**
+	 * Get a snapshot of a window of the rows in roster order
+	 * @param first index of the first row
+	 * @param count maximum number of rows
+	 * @return
+	 */
+	public synchronized List<StudentGrades> getStudentGrades(final int first, final int count) {
+		if(first >= this.rows.size()) {
+			return new ArrayList<StudentGrades>();
+		}
+		return new ArrayList<StudentGrades>(this.rows.subList(first, Math.min(first + count, this.rows.size())));
+	}
+	
+	/**
+	 * Get a snapshot of a window of the rows in sorted order, optionally only those matching a search
+	 * @param first index of the first row
+	 * @param count maximum number of rows
+	 * @param sort how to sort the rows
+	 * @param locale locale for the collation rules when comparing text
+	 * @param search search on student name and eid, or null for all rows
+	 * @return
+	 */
+	public synchronized List<StudentGrades> getStudentGrades(final int first, final int count, final MatrixSort sort, final Locale locale, final String search) {
+		String key = sort + "/" + locale;
+		int[] ordering = this.orderings.get(key);
+		if(ordering == null) {
+			ordering = sort(sort, locale);
+			this.orderings.put(key, ordering);
+		}
+		
+		BitSet matches = search(search);
+		
+		List<StudentGrades> rval = new ArrayList<StudentGrades>();
+		int position = 0;
+		for(int i = 0; i < ordering.length && rval.size() < count; i++) {
+			if(matches != null && !matches.get(ordering[i])) {
+				continue;
+			}
+			if(position++ >= first) {
+				rval.add(this.rows.get(ordering[i]));
+			}
+		}
+		return rval;
+	}
+	
+	/**
+	 * Number of students matching a search
+	 * @param search search on student name and eid, or null for all rows
+	 * @return
+	 */
+	public synchronized int getStudentCount(final String search) {
+		BitSet matches = search(search);
+		return (matches != null) ? matches.cardinality() : this.rows.size();
+	}
+	
+	/**
+	 * Get the row for a student
+	 * @param studentUuid
+	 * @return the row or null if the student is not in this matrix
+	 */
+	public synchronized StudentGrades getStudentGrades(final String studentUuid) {
+		Integer position = this.positions.get(studentUuid);
+		return (position != null) ? this.rows.get(position) : null;
+	}
+	
+	/**
+	 * Does this matrix have a column for the given assignment
+	 * @param assignmentId
+	 * @return
+	 */
+	public boolean hasAssignment(final Long assignmentId) {
+		return this.assignmentIndex.contains(assignmentId);
+	}
+	
+	/**
+	 * Get the statistics for an assignment column
+	 * @param assignmentId
+	 * @return the statistics or null if the assignment is not in this matrix
+	 */
+	public synchronized AssignmentStatistics getAssignmentStatistics(final Long assignmentId) {
+		if(this.statistics == null) {
+			this.statistics = new GradeStatistics(this.assignments, this.assignmentIndex, this.rows);
+		}
+		return this.statistics.get(assignmentId);
+	}
+	
+	/**
+	 * Replace a single cell
+	 * 
+	 * @param studentUuid
+	 * @param assignmentId
+	 * @param gradeInfo
+	 * @return true if the cell was updated, false if the student or assignment is not in this matrix
+	 */
+	public synchronized boolean updateGrade(final String studentUuid, final Long assignmentId, final GradeInfo gradeInfo) {
+		Integer position = this.positions.get(studentUuid);
+		if(position == null || !hasAssignment(assignmentId)) {
+			return false;
+		}
+		StudentGrades sg = new StudentGrades(this.rows.get(position));
+		if(this.statistics != null) {
+			this.statistics.update(assignmentId, sg.getGrade(assignmentId), gradeInfo);
+		}
+		sg.addGrade(assignmentId, gradeInfo);
+		this.rows.set(position, sg);
+		dropOrderings(MatrixSort.property(assignmentId));
+		return true;
+	}
+	
+	/**
+	 * Replace the course grade for a student
+	 * 
+	 * @param studentUuid
+	 * @param courseGrade
+	 * @return true if updated, false if the student is not in this matrix
+	 */
+	public synchronized boolean updateCourseGrade(final String studentUuid, final String courseGrade) {
+		Integer position = this.positions.get(studentUuid);
+		if(position == null) {
+			return false;
+		}
+		StudentGrades sg = new StudentGrades(this.rows.get(position));
+		sg.setCourseGrade(courseGrade);
+		this.rows.set(position, sg);
+		dropOrderings(MatrixSort.courseGradeProperty());
+		return true;
+	}
+	
+	/**
+	 * Replace the course grades for all students
+	 * 
+	 * @param courseGrades map of uuid to course grade
+	 */
+	public synchronized void updateCourseGrades(final Map<String,String> courseGrades) {
+		for(int i = 0; i < this.rows.size(); i++) {
+			StudentGrades sg = new StudentGrades(this.rows.get(i));
+			sg.setCourseGrade(courseGrades.get(sg.getStudentUuid()));
+			this.rows.set(i, sg);
+		}
+		this.staleCourseGrades.clear();
+		dropOrderings(MatrixSort.courseGradeProperty());
+	}
+	
+	/**
+	 * Replace the row for a student with one that has been reloaded
+	 * 
+	 * @param row
+	 * @return true if replaced, false if the student is not in this matrix or the row is for different assignments
+	 */
+	public synchronized boolean replaceStudentGrades(final StudentGrades row) {
+		Integer position = this.positions.get(row.getStudentUuid());
+		if(position == null || row.getAssignmentIndex() != this.assignmentIndex) {
+			return false;
+		}
+		StudentGrades old = this.rows.get(position);
+		if(this.statistics != null) {
+			for(Assignment assignment: this.assignments) {
+				this.statistics.update(assignment.getId(), old.getGrade(assignment.getId()), row.getGrade(assignment.getId()));
+			}
+		}
+		this.rows.set(position, row);
+		this.staleCourseGrades.remove(row.getStudentUuid());
+		this.orderings.clear();
+		return true;
+	}
+	
+	/**
+	 * Mark the row for a student as stale, so it is reloaded before the matrix is next used
+	 * 
+	 * @param studentUuid
+	 * @return false if the student is not in this matrix
+	 */
+	public synchronized boolean markStale(final String studentUuid) {
+		if(!this.positions.containsKey(studentUuid)) {
+			return false;
+		}
+		this.staleStudents.add(studentUuid);
+		return true;
+	}
+	
+	/**
+	 * Mark the course grades as stale, so they are reloaded before the matrix is next used
+	 */
+	public synchronized void markCourseGradesStale() {
+		this.courseGradesStale = true;
+	}
+	
+	/**
+	 * Mark the course grade for a student as stale after one of their grades changed, so it is recalculated when the row is next read.
+	 * Unlike {@link #markStale(String)} the rest of the row is kept.
+	 * 
+	 * @param studentUuid
+	 * @return false if the student is not in this matrix
+	 */
+	public synchronized boolean markCourseGradeStale(final String studentUuid) {
+		if(!this.positions.containsKey(studentUuid)) {
+			return false;
+		}
+		this.staleCourseGrades.add(studentUuid);
+		return true;
+	}
+	
+	/**
+	 * Get and clear the students whose course grades are stale
+	 * @return
+	 */
+	public synchronized Set<String> takeStaleCourseGrades() {
+		Set<String> rval = new HashSet<String>(this.staleCourseGrades);
+		this.staleCourseGrades.clear();
+		return rval;
+	}
+	
+	/**
+	 * Get and clear the students whose rows are stale
+	 * @return
+	 */
+	public synchronized Set<String> takeStaleStudents() {
+		Set<String> rval = new HashSet<String>(this.staleStudents);
+		this.staleStudents.clear();
+		return rval;
+	}
+	
+	/**
+	 * Get and clear the stale flag for the course grades
+	 * @return
+	 */
+	public synchronized boolean takeCourseGradesStale() {
+		boolean rval = this.courseGradesStale;
+		this.courseGradesStale = false;
+		return rval;
+	}
+	
+	/**
+	 * Number of students in this matrix
+	 * @return
+	 */
+	public synchronized int getStudentCount() {
+		return this.rows.size();
+	}
+	
+	/**
+	 * Approximate size of this matrix, counted as the number of cells including the course grade column.
+	 * Used to bound the cache.
+	 * @return
+	 */
+	public synchronized long getCellCount() {
+		return (long) this.rows.size() * (this.assignments.size() + 1);
+	}
+	
+	/**
+	 * Work out the order of the rows for a sort. Each row has its sort key built once, then the keys are sorted.
+	 * The sort is stable so rows that compare equal stay in roster order.
+	 * 
+	 * @param sort
+	 * @param locale
+	 * @return row positions in sorted order
+	 */
+	private int[] sort(final MatrixSort sort, final Locale locale) {
+		Collator collator = Collator.getInstance(locale);
+		collator.setStrength(Collator.SECONDARY);
+		
+		SortKey[] keys = new SortKey[this.rows.size()];
+		for(int i = 0; i < keys.length; i++) {
+			StudentGrades row = this.rows.get(i);
+			if(sort.getSortOrder() != null) {
+				switch(sort.getSortOrder()) {
+					case FIRST_NAME:
+						keys[i] = SortKey.forText(i, collator, row.getStudentFirstName(), row.getStudentLastName(), row.getStudentEid());
+						break;
+					case USER_ID:
+						keys[i] = SortKey.forText(i, collator, row.getStudentEid());
+						break;
+					default:
+						keys[i] = SortKey.forText(i, collator, row.getStudentLastName(), row.getStudentFirstName(), row.getStudentEid());
+				}
+			} else if(sort.getAssignmentId() != null) {
+				GradeInfo gradeInfo = row.getGrade(sort.getAssignmentId());
+				keys[i] = SortKey.forGrade(i, collator, (gradeInfo != null) ? gradeInfo.getGrade() : null);
+			} else {
+				keys[i] = SortKey.forGrade(i, collator, row.getCourseGrade());
+			}
+		}
+		
+		final boolean ascending = sort.isAscending();
+		Arrays.sort(keys, new Comparator<SortKey>() {
+			@Override
+			public int compare(SortKey k1, SortKey k2) {
+				return k1.compareTo(k2, ascending);
+			}
+		});
+		
+		int[] ordering = new int[keys.length];
+		for(int i = 0; i < keys.length; i++) {
+			ordering[i] = keys[i].row;
+		}
+		return ordering;
+	}
+	
+	/**
+	 * Run a search against the index, building it if this is the first search
+	 * @param search
+	 * @return the matching row positions or null if the search is empty
+	 */
+	private BitSet search(final String search) {
+		if(search == null || search.trim().isEmpty()) {
+			return null;
+		}
+		if(this.searchIndex == null) {
+			this.searchIndex = new StudentSearchIndex(this.rows);
+		}
+		return this.searchIndex.search(search);
+	}
+	
+	/**
+	 * Forget the orderings for a sort property, in both directions and all locales
+	 * @param property
+	 */
+	private void dropOrderings(final String property) {
+		Iterator<String> keys = this.orderings.keySet().iterator();
+		while(keys.hasNext()) {
+			if(keys.next().startsWith(property + " ")) {
+				keys.remove();
+			}
+		}
+	}
+	
+	
+	/**
+	 * The values a row is sorted on. Names are compared by collation key. Grades are compared as numbers where they are numbers,
+	 * which sort before any other grades (eg letters), and missing grades always sort last.
+	 */
+	private static class SortKey {
+		private final int row;
+		private final boolean missing;
+		private final boolean numeric;
+		private final double number;
+		private final CollationKey[] text;
+		
+		private SortKey(int row, boolean missing, boolean numeric, double number, CollationKey[] text) {
+			this.row = row;
+			this.missing = missing;
+			this.numeric = numeric;
+			this.number = number;
+			this.text = text;
+		}
+		
+		static SortKey forText(int row, Collator collator, String... values) {
+			CollationKey[] text = new CollationKey[values.length];
+			for(int i = 0; i < values.length; i++) {
+				text[i] = collator.getCollationKey((values[i] != null) ? values[i] : "");
+			}
+			return new SortKey(row, false, false, 0, text);
+		}
+		
+		static SortKey forGrade(int row, Collator collator, String grade) {
+			if(grade == null || grade.trim().isEmpty()) {
+				return new SortKey(row, true, false, 0, null);
+			}
+			try {
+				return new SortKey(row, false, true, Double.parseDouble(grade), null);
+			} catch (NumberFormatException e) {
+				return new SortKey(row, false, false, 0, new CollationKey[] { collator.getCollationKey(grade.trim()) });
+			}
+		}
+		
+		int compareTo(SortKey other, boolean ascending) {
+			if(this.missing || other.missing) {
+				return (this.missing == other.missing) ? 0 : (this.missing ? 1 : -1);
+			}
+			int rval;
+			if(this.numeric && other.numeric) {
+				rval = Double.compare(this.number, other.number);
+			} else if(this.numeric != other.numeric) {
+				rval = this.numeric ? -1 : 1;
+			} else {
+				rval = 0;
+				for(int i = 0; i < this.text.length && rval == 0; i++) {
+					rval = this.text[i].compareTo(other.text[i]);
+				}
+			}
+			return ascending ? rval : -rval;
+		}
+	}
+	
+}
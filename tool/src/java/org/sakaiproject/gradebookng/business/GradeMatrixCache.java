@@ -0,0 +1,217 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Setter;
+import lombok.extern.apachecommons.CommonsLog;
+
+/**
+ * Per site cache of the assembled {@link GradeMatrix}.
+ * 
+ * The cache is bounded by the total number of cells held across all sites and evicts the least recently used
+ * site when that is exceeded. Entries also expire after a time to live so that changes made outside of this tool
+ * (eg grades pushed from other tools) are eventually picked up.
+ *
+ */
+@CommonsLog
+public class GradeMatrixCache {
+
+	/**
+	 * Maximum number of cells held across all sites. Defaults to 2,000,000.
+	 */
+	@Setter
+	private long maxCells = 2000000;
+	
+	/**
+	 * Time to live for an entry, in milliseconds. Defaults to 5 minutes.
+	 */
+	@Setter
+	private long timeToLive = 300000;
+	
+	//access ordered so iteration starts at the least recently used
+	private final LinkedHashMap<String,GradeMatrix> entries = new LinkedHashMap<String,GradeMatrix>(16, 0.75f, true);
+	
+	//the same entries, for lookups that must not change the access order
+	private final Map<String,GradeMatrix> index = new HashMap<String,GradeMatrix>();
+	
+	private long cells = 0;
+	
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong expirations = new AtomicLong();
+	
+	/**
+	 * Get the matrix for a site
+	 * 
+	 * @param siteId
+	 * @return the matrix or null if not cached or expired
+	 */
+	public synchronized GradeMatrix get(final String siteId) {
+		GradeMatrix matrix = this.entries.get(siteId);
+		if(matrix != null && isExpired(matrix)) {
+			remove(siteId);
+			this.expirations.incrementAndGet();
+			matrix = null;
+		}
+		
+		if(matrix == null) {
+			this.misses.incrementAndGet();
+		} else {
+			this.hits.incrementAndGet();
+		}
+		return matrix;
+	}
+	
+	/**
+	 * Get the matrix for a site without affecting the statistics or the eviction order. Used when applying updates.
+	 * 
+	 * @param siteId
+	 * @return the matrix or null if not cached
+	 */
+	public synchronized GradeMatrix peek(final String siteId) {
+		return this.index.get(siteId);
+	}
+	
+	/**
+	 * Add a matrix to the cache, evicting the least recently used entries if required
+	 * 
+	 * @param matrix
+	 */
+	public synchronized void put(final GradeMatrix matrix) {
+		long size = matrix.getCellCount();
+		if(size > this.maxCells) {
+			log.warn("Grade matrix for site " + matrix.getSiteId() + " has " + size + " cells which exceeds the cache size of " + this.maxCells + ", not caching.");
+			return;
+		}
+		
+		remove(matrix.getSiteId());
+		this.entries.put(matrix.getSiteId(), matrix);
+		this.index.put(matrix.getSiteId(), matrix);
+		this.cells += size;
+		
+		Iterator<Map.Entry<String,GradeMatrix>> iter = this.entries.entrySet().iterator();
+		while(this.cells > this.maxCells && iter.hasNext()) {
+			GradeMatrix eldest = iter.next().getValue();
+			iter.remove();
+			this.index.remove(eldest.getSiteId());
+			this.cells -= eldest.getCellCount();
+			this.evictions.incrementAndGet();
+			log.debug("Evicted grade matrix for site: " + eldest.getSiteId());
+		}
+	}
+	
+	/**
+	 * Drop the matrix for a site
+	 * 
+	 * @param siteId
+	 */
+	public synchronized void invalidate(final String siteId) {
+		remove(siteId);
+	}
+	
+	/**
+	 * Drop the matrices for a gradebook
+	 * 
+	 * @param gradebookUid
+	 */
+	public synchronized void invalidateGradebook(final String gradebookUid) {
+		for(GradeMatrix matrix: findGradebook(gradebookUid)) {
+			remove(matrix.getSiteId());
+		}
+	}
+	
+	/**
+	 * Mark the row for a student as stale in the matrices for a gradebook, so it is reloaded when next used.
+	 * A matrix that does not have the student is dropped, as the student must be new to it.
+	 * 
+	 * @param gradebookUid
+	 * @param studentUuid
+	 */
+	public synchronized void markStale(final String gradebookUid, final String studentUuid) {
+		for(GradeMatrix matrix: findGradebook(gradebookUid)) {
+			if(!matrix.markStale(studentUuid)) {
+				remove(matrix.getSiteId());
+			}
+		}
+	}
+	
+	/**
+	 * Mark the course grades as stale in the matrices for a gradebook, so they are reloaded when next used
+	 * 
+	 * @param gradebookUid
+	 */
+	public synchronized void markCourseGradesStale(final String gradebookUid) {
+		for(GradeMatrix matrix: findGradebook(gradebookUid)) {
+			matrix.markCourseGradesStale();
+		}
+	}
+	
+	/**
+	 * Drop everything
+	 */
+	public synchronized void clear() {
+		this.entries.clear();
+		this.index.clear();
+		this.cells = 0;
+	}
+	
+	public long getHits() {
+		return this.hits.get();
+	}
+	
+	public long getMisses() {
+		return this.misses.get();
+	}
+	
+	public long getEvictions() {
+		return this.evictions.get();
+	}
+	
+	public long getExpirations() {
+		return this.expirations.get();
+	}
+	
+	public synchronized int getSize() {
+		return this.entries.size();
+	}
+	
+	public synchronized long getCells() {
+		return this.cells;
+	}
+	
+	private void remove(final String siteId) {
+		GradeMatrix removed = this.entries.remove(siteId);
+		this.index.remove(siteId);
+		if(removed != null) {
+			this.cells -= removed.getCellCount();
+		}
+	}
+	
+	private List<GradeMatrix> findGradebook(final String gradebookUid) {
+		List<GradeMatrix> rval = new ArrayList<GradeMatrix>();
+		for(GradeMatrix matrix: this.index.values()) {
+			if(matrix.getGradebookUid().equals(gradebookUid)) {
+				rval.add(matrix);
+			}
+		}
+		return rval;
+	}
+	
+	private boolean isExpired(final GradeMatrix matrix) {
+		return System.currentTimeMillis() - matrix.getCreated() > this.timeToLive;
+	}
+	
+	@Override
+	public String toString() {
+		return "GradeMatrixCache [size=" + getSize() + ", cells=" + getCells() + ", hits=" + getHits() + ", misses=" + getMisses() 
+				+ ", evictions=" + getEvictions() + ", expirations=" + getExpirations() + "]";
+	}
+	
+}
@@ -0,0 +1,195 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sakaiproject.gradebookng.business.dto.AssignmentStatistics;
+import org.sakaiproject.gradebookng.tool.model.AssignmentIndex;
+import org.sakaiproject.gradebookng.tool.model.GradeInfo;
+import org.sakaiproject.gradebookng.tool.model.StudentGrades;
+import org.sakaiproject.service.gradebook.shared.Assignment;
+
+/**
+ * Running statistics for every assignment column of a {@link GradeMatrix}.
+ * 
+ * All columns are worked out in one pass over the rows. After that a changed cell is applied incrementally: each column keeps its numeric grades
+ * in a sorted array, so the median is a lookup and a change is a binary search and a shift, rather than a rescan of the column.
+ * 
+ * Not thread safe, the matrix guards access.
+ *
+ */
+class GradeStatistics {
+	
+	private static final int BUCKETS = 10;
+	
+	private final AssignmentIndex assignmentIndex;
+	
+	//by assignment ordinal
+	private final Column[] columns;
+	
+	GradeStatistics(final List<Assignment> assignments, final AssignmentIndex assignmentIndex, final List<StudentGrades> rows) {
+		this.assignmentIndex = assignmentIndex;
+		this.columns = new Column[assignmentIndex.size()];
+		
+		Long[] ids = new Long[assignmentIndex.size()];
+		for(Assignment assignment: assignments) {
+			int ordinal = assignmentIndex.getOrdinal(assignment.getId());
+			ids[ordinal] = assignment.getId();
+			this.columns[ordinal] = new Column(assignment.getPoints(), rows.size());
+		}
+		
+		//grades are interned and drawn from a small set, so only parse each once
+		Map<String,Double> parsed = new HashMap<String,Double>();
+		
+		for(StudentGrades row: rows) {
+			for(int ordinal = 0; ordinal < ids.length; ordinal++) {
+				Double value = parse(row.getGrade(ids[ordinal]), parsed);
+				if(value != null) {
+					this.columns[ordinal].append(value);
+				}
+			}
+		}
+		
+		for(Column column: this.columns) {
+			column.sort();
+		}
+	}
+	
+	/**
+	 * Apply a changed cell
+	 * 
+	 * @param assignmentId
+	 * @param oldGrade the grade before the change, may be null
+	 * @param newGrade the grade after the change, may be null
+	 */
+	void update(final Long assignmentId, final GradeInfo oldGrade, final GradeInfo newGrade) {
+		int ordinal = this.assignmentIndex.getOrdinal(assignmentId);
+		if(ordinal < 0) {
+			return;
+		}
+		Column column = this.columns[ordinal];
+		
+		Double oldValue = parse(oldGrade, null);
+		if(oldValue != null) {
+			column.remove(oldValue);
+		}
+		Double newValue = parse(newGrade, null);
+		if(newValue != null) {
+			column.add(newValue);
+		}
+	}
+	
+	/**
+	 * Get a snapshot of the statistics for a column
+	 * 
+	 * @param assignmentId
+	 * @return the statistics or null if the assignment is not in the matrix
+	 */
+	AssignmentStatistics get(final Long assignmentId) {
+		int ordinal = this.assignmentIndex.getOrdinal(assignmentId);
+		return (ordinal >= 0) ? this.columns[ordinal].snapshot() : null;
+	}
+	
+	private static Double parse(final GradeInfo gradeInfo, final Map<String,Double> parsed) {
+		if(gradeInfo == null || gradeInfo.getGrade() == null) {
+			return null;
+		}
+		String grade = gradeInfo.getGrade();
+		if(parsed != null && parsed.containsKey(grade)) {
+			return parsed.get(grade);
+		}
+		Double value;
+		try {
+			value = Double.valueOf(grade);
+		} catch (NumberFormatException e) {
+			//eg a letter grade
+			value = null;
+		}
+		if(parsed != null) {
+			parsed.put(grade, value);
+		}
+		return value;
+	}
+	
+	
+	/**
+	 * The numeric grades for one assignment
+	 */
+	private static class Column {
+		private final double points;
+		private final int[] histogram;
+		private double[] values;
+		private int size;
+		private double sum;
+		
+		Column(Double points, int capacity) {
+			this.points = (points != null) ? points : 0;
+			this.histogram = new int[(this.points > 0) ? BUCKETS : 0];
+			this.values = new double[Math.max(capacity, 1)];
+		}
+		
+		/**
+		 * Add a value without keeping the order, during the initial pass
+		 */
+		void append(double value) {
+			ensureCapacity();
+			this.values[this.size++] = value;
+			this.sum += value;
+			count(value, 1);
+		}
+		
+		void sort() {
+			Arrays.sort(this.values, 0, this.size);
+		}
+		
+		void add(double value) {
+			ensureCapacity();
+			int position = Arrays.binarySearch(this.values, 0, this.size, value);
+			if(position < 0) {
+				position = -position - 1;
+			}
+			System.arraycopy(this.values, position, this.values, position + 1, this.size - position);
+			this.values[position] = value;
+			this.size++;
+			this.sum += value;
+			count(value, 1);
+		}
+		
+		void remove(double value) {
+			int position = Arrays.binarySearch(this.values, 0, this.size, value);
+			if(position < 0) {
+				return;
+			}
+			System.arraycopy(this.values, position + 1, this.values, position, this.size - position - 1);
+			this.size--;
+			this.sum -= value;
+			count(value, -1);
+		}
+		
+		AssignmentStatistics snapshot() {
+			if(this.size == 0) {
+				return new AssignmentStatistics(0, null, null, null, null, this.histogram);
+			}
+			double median = (this.size % 2 == 1) ? this.values[this.size / 2] : (this.values[this.size / 2 - 1] + this.values[this.size / 2]) / 2;
+			return new AssignmentStatistics(this.size, this.sum / this.size, median, this.values[0], this.values[this.size - 1], this.histogram);
+		}
+		
+		private void count(double value, int delta) {
+			if(this.histogram.length == 0) {
+				return;
+			}
+			int bucket = (int) Math.floor(value / this.points * BUCKETS);
+			bucket = Math.max(0, Math.min(BUCKETS - 1, bucket));
+			this.histogram[bucket] += delta;
+		}
+		
+		private void ensureCapacity() {
+			if(this.size == this.values.length) {
+				this.values = Arrays.copyOf(this.values, this.values.length * 2);
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,336 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.apachecommons.CommonsLog;
+
+import org.sakaiproject.gradebookng.business.dto.GradeSaveResult;
+import org.sakaiproject.gradebookng.business.dto.GradeUpdate;
+import org.sakaiproject.gradebookng.business.dto.GradeWriteStatus;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
+
+/**
+ * Write behind queue for grade edits. Edits are accepted immediately and written in batches by a background worker,
+ * so an inline edit does not wait on the database.
+ *
+ * Edits are held per site and per cell, and each is written as the user that made it. Only the latest edit for a cell is kept, whoever made it,
+ * and as there is a single worker and a failed write is never put back behind a newer edit for the cell, a cell is never written out of order. Writes that fail in the gradebook service are retried,
+ * anything else that fails (eg an invalid grade) is reported in the status for the site, and the rows it was applied to in the cached matrix are reloaded.
+ *
+ * Anything still pending is written out when the application shuts down.
+ *
+ */
+@CommonsLog
+public class GradeWriteQueue {
+	
+	/**
+	 * Accept edits into the queue (true) or have them saved synchronously (false). Defaults to false.
+	 */
+	@Setter
+	@Getter
+	private boolean enabled = false;
+	
+	@Setter
+	private GradebookNgBusinessService businessService;
+	
+	@Setter
+	private SessionManager sessionManager;
+	
+	@Setter
+	private ThreadLocalManager threadLocalManager;
+	
+	/**
+	 * Time between flushes, in milliseconds. Defaults to 1 second.
+	 */
+	@Setter
+	private long flushInterval = 1000;
+	
+	/**
+	 * Maximum number of edits written in one call to the business service. Defaults to 500.
+	 */
+	@Setter
+	private int batchSize = 500;
+	
+	/**
+	 * Number of times a write is retried before it is given up on. Defaults to 3.
+	 */
+	@Setter
+	private int maxRetries = 3;
+	
+	/**
+	 * Maximum number of failed edits remembered per site for the status. Defaults to 100.
+	 */
+	@Setter
+	private int maxFailures = 100;
+	
+	//edits waiting to be written, by site and then by cell. Guarded by this
+	private final Map<String,Map<String,Write>> pending = new LinkedHashMap<String,Map<String,Write>>();
+	
+	//number of edits being written per site. Guarded by this
+	private final Map<String,Integer> inFlight = new HashMap<String,Integer>();
+	
+	//edits that have been given up on per site. Guarded by this
+	private final Map<String,Map<GradeUpdate,GradeSaveResult.Failure>> failed = new HashMap<String,Map<GradeUpdate,GradeSaveResult.Failure>>();
+	
+	//only one flush at a time, so the writes for a cell stay in order
+	private final Object flushLock = new Object();
+	
+	private ScheduledExecutorService worker;
+	
+	
+	public void init() {
+		if(!this.enabled) {
+			return;
+		}
+		this.worker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "gradebookng-grade-writer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this.worker.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flush();
+				} catch (RuntimeException e) {
+					//keep the worker alive
+					log.error("Error writing queued grades", e);
+				}
+			}
+		}, this.flushInterval, this.flushInterval, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Stop the worker and write out everything that is still pending
+	 */
+	public void destroy() {
+		if(this.worker != null) {
+			this.worker.shutdown();
+			try {
+				this.worker.awaitTermination(this.flushInterval * 5, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		//retries are bounded so this always finishes
+		while(hasPending()) {
+			flush();
+		}
+	}
+	
+	/**
+	 * Queue an edit made by the current user. A pending edit for the same cell is replaced, even if it was made by someone else.
+	 *
+	 * @param siteId the site the edit is for
+	 * @param update the edit
+	 */
+	public void add(final String siteId, final GradeUpdate update) {
+		Session session = this.sessionManager.getCurrentSession();
+		
+		synchronized(this) {
+			Map<String,Write> writes = this.pending.get(siteId);
+			if(writes == null) {
+				writes = new LinkedHashMap<String,Write>();
+				this.pending.put(siteId, writes);
+			}
+			writes.put(cell(update), new Write(update, session));
+			
+			//a newer edit supersedes an earlier failure for the cell
+			Map<GradeUpdate,GradeSaveResult.Failure> siteFailures = this.failed.get(siteId);
+			if(siteFailures != null) {
+				for(GradeUpdate failure: new ArrayList<GradeUpdate>(siteFailures.keySet())) {
+					if(cell(failure).equals(cell(update))) {
+						siteFailures.remove(failure);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Get the status of the edits for a site. Failures are reported until a newer edit is made for the cell.
+	 *
+	 * @param siteId
+	 * @return
+	 */
+	public synchronized GradeWriteStatus getStatus(final String siteId) {
+		Map<String,Write> writes = this.pending.get(siteId);
+		int count = (writes != null) ? writes.size() : 0;
+		Integer writing = this.inFlight.get(siteId);
+		if(writing != null) {
+			count += writing;
+		}
+		
+		Map<GradeUpdate,GradeSaveResult.Failure> siteFailures = this.failed.get(siteId);
+		return new GradeWriteStatus(count, (siteFailures != null) ? new LinkedHashMap<GradeUpdate,GradeSaveResult.Failure>(siteFailures) : new LinkedHashMap<GradeUpdate,GradeSaveResult.Failure>());
+	}
+	
+	private synchronized boolean hasPending() {
+		return !this.pending.isEmpty();
+	}
+	
+	/**
+	 * Write out everything that is currently pending. Run by the worker, and directly by tests.
+	 * 
+	 * Each cell is pending at most once, so the edits for a site can be grouped by the session that made them and written in any order.
+	 */
+	void flush() {
+		synchronized(this.flushLock) {
+			Map<String,Map<String,Write>> sites;
+			synchronized(this) {
+				sites = new LinkedHashMap<String,Map<String,Write>>(this.pending);
+				this.pending.clear();
+				for(Map.Entry<String,Map<String,Write>> site: sites.entrySet()) {
+					adjustInFlight(site.getKey(), site.getValue().size());
+				}
+			}
+			
+			for(Map.Entry<String,Map<String,Write>> site: sites.entrySet()) {
+				Map<String,List<Write>> bySession = new LinkedHashMap<String,List<Write>>();
+				for(Write write: site.getValue().values()) {
+					List<Write> writes = bySession.get(write.session.getId());
+					if(writes == null) {
+						writes = new ArrayList<Write>();
+						bySession.put(write.session.getId(), writes);
+					}
+					writes.add(write);
+				}
+				
+				for(List<Write> writes: bySession.values()) {
+					for(int i = 0; i < writes.size(); i += this.batchSize) {
+						write(site.getKey(), writes.subList(i, Math.min(i + this.batchSize, writes.size())));
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Write a chunk of edits made in one session, as the user that made them, and requeue or record anything that failed
+	 *
+	 * @param siteId
+	 * @param writes
+	 */
+	private void write(final String siteId, final List<Write> writes) {
+		List<GradeUpdate> updates = new ArrayList<GradeUpdate>(writes.size());
+		for(Write write: writes) {
+			updates.add(write.update);
+		}
+		
+		Map<GradeUpdate,GradeSaveResult.Failure> failures;
+		this.sessionManager.setCurrentSession(writes.get(0).session);
+		RequestCache.begin();
+		try {
+			failures = this.businessService.saveGrades(siteId, updates).getFailed();
+		} catch (RuntimeException e) {
+			log.error("Error writing " + updates.size() + " queued grades for site " + siteId, e);
+			failures = new HashMap<GradeUpdate,GradeSaveResult.Failure>();
+			for(GradeUpdate update: updates) {
+				failures.put(update, GradeSaveResult.Failure.ERROR);
+			}
+		} finally {
+			RequestCache.end();
+			this.threadLocalManager.clear();
+		}
+		
+		List<GradeUpdate> givenUp = new ArrayList<GradeUpdate>();
+		synchronized(this) {
+			adjustInFlight(siteId, -writes.size());
+			
+			for(Write write: writes) {
+				GradeSaveResult.Failure failure = failures.get(write.update);
+				if(failure == null) {
+					continue;
+				}
+				if(failure == GradeSaveResult.Failure.ERROR && write.attempts < this.maxRetries) {
+					requeue(siteId, write);
+				} else {
+					log.warn("Giving up on queued grade " + write.update + ": " + failure);
+					recordFailure(siteId, write.update, failure);
+					givenUp.add(write.update);
+				}
+			}
+		}
+		
+		//the edits were applied to the cached matrix when they were queued, so have those rows reloaded
+		if(!givenUp.isEmpty()) {
+			this.businessService.queuedGradesFailed(siteId, givenUp);
+		}
+	}
+	
+	/**
+	 * Put a failed write back in the queue, unless the cell has been edited again since, by anyone
+	 */
+	private void requeue(final String siteId, final Write write) {
+		Map<String,Write> writes = this.pending.get(siteId);
+		if(writes == null) {
+			writes = new LinkedHashMap<String,Write>();
+			this.pending.put(siteId, writes);
+		}
+		String cell = cell(write.update);
+		if(!writes.containsKey(cell)) {
+			write.attempts++;
+			writes.put(cell, write);
+		}
+	}
+	
+	private void recordFailure(final String siteId, final GradeUpdate update, final GradeSaveResult.Failure failure) {
+		Map<GradeUpdate,GradeSaveResult.Failure> siteFailures = this.failed.get(siteId);
+		if(siteFailures == null) {
+			siteFailures = new LinkedHashMap<GradeUpdate,GradeSaveResult.Failure>();
+			this.failed.put(siteId, siteFailures);
+		}
+		siteFailures.put(update, failure);
+		
+		//keep the most recent
+		while(siteFailures.size() > this.maxFailures) {
+			siteFailures.remove(siteFailures.keySet().iterator().next());
+		}
+	}
+	
+	private void adjustInFlight(final String siteId, final int delta) {
+		Integer current = this.inFlight.get(siteId);
+		int count = ((current != null) ? current : 0) + delta;
+		if(count > 0) {
+			this.inFlight.put(siteId, count);
+		} else {
+			this.inFlight.remove(siteId);
+		}
+	}
+	
+	private static String cell(final GradeUpdate update) {
+		return update.getAssignmentId() + "/" + update.getStudentUuid();
+	}
+	
+	
+	/**
+	 * An edit, the session it was made in and the number of times it has been retried
+	 */
+	private static class Write {
+		private final GradeUpdate update;
+		private final Session session;
+		private int attempts;
+		
+		Write(GradeUpdate update, Session session) {
+			this.update = update;
+			this.session = session;
+		}
+	}
+
+}
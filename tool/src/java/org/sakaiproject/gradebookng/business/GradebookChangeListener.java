@@ -0,0 +1,18 @@
+package org.sakaiproject.gradebookng.business;
+
+import org.sakaiproject.gradebookng.business.dto.GradebookChangeEvent;
+
+/**
+ * Receives the gradebook changes delivered by a {@link GradebookChangeTransport}
+ *
+ */
+public interface GradebookChangeListener {
+	
+	/**
+	 * Apply a change. Called on whatever thread the transport delivers on, so must not rely on a request.
+	 * 
+	 * @param event
+	 */
+	void onChange(GradebookChangeEvent event);
+	
+}
@@ -0,0 +1,33 @@
+package org.sakaiproject.gradebookng.business;
+
+import org.sakaiproject.gradebookng.business.dto.GradebookChangeEvent;
+
+/**
+ * Carries {@link GradebookChangeEvent}s between the nodes of a cluster. A published event is delivered to the listeners on every node,
+ * including the one that published it.
+ * 
+ * @see EventTrackingChangeTransport
+ * @see LocalChangeTransport
+ */
+public interface GradebookChangeTransport {
+	
+	/**
+	 * Send a change to every node
+	 * 
+	 * @param event
+	 */
+	void publish(GradebookChangeEvent event);
+	
+	/**
+	 * Register a listener for the changes delivered to this node
+	 * 
+	 * @param listener
+	 */
+	void addListener(GradebookChangeListener listener);
+	
+	/**
+	 * @param listener
+	 */
+	void removeListener(GradebookChangeListener listener);
+	
+}
@@ -0,0 +1,146 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.apachecommons.CommonsLog;
+
+import org.sakaiproject.gradebookng.business.dto.GradebookChangeEvent;
+
+/**
+ * Keeps the caches on this node in step with changes made on every node.
+ * 
+ * Changes made here are applied to the local caches directly by the business service, then published on the {@link GradebookChangeTransport}
+ * so the other nodes can apply them too. Changes from other nodes mark the affected rows stale in the {@link GradeMatrixCache},
+ * so only those rows are reloaded, and roster changes reload the roster in the {@link RosterCache}.
+ * The gradebook is moved on to a new version in {@link GradebookVersions} once the caches have been marked.
+ * Changes this node published are ignored when they come back.
+ *
+ */
+@CommonsLog
+public class GradebookChanges implements GradebookChangeListener {
+	
+	/**
+	 * Identifies this node in the changes it publishes
+	 */
+	@Getter
+	private final String nodeId = UUID.randomUUID().toString();
+	
+	@Setter
+	private GradebookChangeTransport transport;
+	
+	@Setter
+	private GradeMatrixCache gradeMatrixCache;
+	
+	@Setter
+	private RosterCache rosterCache;
+	
+	@Setter
+	private GradebookVersions gradebookVersions;
+	
+	/**
+	 * A batch of grade changes is published as one change listing the students. Above this many students it is published
+	 * as a change to the whole gradebook instead. Defaults to 4, about as many uuids as fit in the resource of a Sakai event.
+	 */
+	@Setter
+	private int maxStudentsPerChange = 4;
+	
+	
+	public void init() {
+		this.transport.addListener(this);
+	}
+	
+	public void destroy() {
+		this.transport.removeListener(this);
+	}
+	
+	/**
+	 * Publish a grade change for a student
+	 * 
+	 * @param gradebookUid
+	 * @param studentUuid
+	 */
+	public void gradeChanged(final String gradebookUid, final String studentUuid) {
+		publish(GradebookChangeEvent.Type.GRADE, gradebookUid, Collections.singletonList(studentUuid));
+	}
+	
+	/**
+	 * Publish grade changes for a number of students, as a single change
+	 * 
+	 * @param gradebookUid
+	 * @param studentUuids
+	 */
+	public void gradesChanged(final String gradebookUid, final Collection<String> studentUuids) {
+		if(studentUuids.size() > this.maxStudentsPerChange) {
+			publish(GradebookChangeEvent.Type.GRADE, gradebookUid, null);
+		} else {
+			publish(GradebookChangeEvent.Type.GRADE, gradebookUid, studentUuids);
+		}
+	}
+	
+	/**
+	 * Publish a course grade change, for a student or the whole gradebook
+	 * 
+	 * @param gradebookUid
+	 * @param studentUuid the student, or null for everyone
+	 */
+	public void courseGradeChanged(final String gradebookUid, final String studentUuid) {
+		publish(GradebookChangeEvent.Type.COURSE_GRADE, gradebookUid, (studentUuid != null) ? Collections.singletonList(studentUuid) : null);
+	}
+	
+	/**
+	 * Publish an assignment change
+	 * 
+	 * @param gradebookUid
+	 */
+	public void assignmentsChanged(final String gradebookUid) {
+		publish(GradebookChangeEvent.Type.ASSIGNMENT, gradebookUid, null);
+	}
+	
+	@Override
+	public void onChange(final GradebookChangeEvent event) {
+		if(this.nodeId.equals(event.getOrigin())) {
+			return;
+		}
+		log.debug("Applying gradebook change: " + event);
+		
+		switch(event.getType()) {
+			case GRADE:
+				if(event.isGradebookWide()) {
+					this.gradeMatrixCache.invalidateGradebook(event.getGradebookUid());
+				} else {
+					for(String studentUuid: event.getStudentUuids()) {
+						this.gradeMatrixCache.markStale(event.getGradebookUid(), studentUuid);
+					}
+				}
+				break;
+			case COURSE_GRADE:
+				//the course grades are reloaded in one go, so there is no need to reload the student's whole row
+				this.gradeMatrixCache.markCourseGradesStale(event.getGradebookUid());
+				break;
+			case ASSIGNMENT:
+				this.gradeMatrixCache.invalidateGradebook(event.getGradebookUid());
+				break;
+			case ROSTER:
+				//the gradebook uid is the site id. The roster cache moves the version on if the roster turns out to have changed
+				this.rosterCache.membershipChanged(event.getGradebookUid());
+				return;
+		}
+		
+		//after the caches are marked, see GradebookVersions
+		this.gradebookVersions.bump(event.getGradebookUid());
+	}
+	
+	private void publish(final GradebookChangeEvent.Type type, final String gradebookUid, final Collection<String> studentUuids) {
+		try {
+			this.transport.publish(new GradebookChangeEvent(type, this.nodeId, gradebookUid, studentUuids));
+		} catch (RuntimeException e) {
+			//the change is saved, other nodes will catch up when their caches expire
+			log.error("Error publishing gradebook change for " + gradebookUid, e);
+		}
+	}
+	
+}
@@ -1,23 +1,37 @@
 package org.sakaiproject.gradebookng.business;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-
-import javax.xml.bind.JAXBException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import lombok.Setter;
 import lombok.extern.apachecommons.CommonsLog;
 
 import org.apache.commons.lang.StringUtils;
-import org.sakaiproject.entity.api.ResourceProperties;
-import org.sakaiproject.entity.api.ResourcePropertiesEdit;
 import org.sakaiproject.exception.IdUnusedException;
-import org.sakaiproject.exception.PermissionException;
+import org.sakaiproject.gradebookng.business.dto.AssignmentStatistics;
+import org.sakaiproject.gradebookng.business.dto.GradeSaveResult;
+import org.sakaiproject.gradebookng.business.dto.GradeUpdate;
+import org.sakaiproject.gradebookng.business.dto.GradeWriteStatus;
 import org.sakaiproject.gradebookng.business.dto.GradebookUserPreferences;
+import org.sakaiproject.gradebookng.business.dto.RosterEntry;
+import org.sakaiproject.gradebookng.tool.model.AssignmentIndex;
 import org.sakaiproject.gradebookng.tool.model.GradeInfo;
 import org.sakaiproject.gradebookng.tool.model.StudentGrades;
 import org.sakaiproject.service.gradebook.shared.AssessmentNotFoundException;
@@ -26,12 +40,14 @@ import org.sakaiproject.service.gradebook.shared.GradeDefinition;
 import org.sakaiproject.service.gradebook.shared.GradebookNotFoundException;
 import org.sakaiproject.service.gradebook.shared.GradebookService;
 import org.sakaiproject.service.gradebook.shared.InvalidGradeException;
-import org.sakaiproject.site.api.Site;
 import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
 import org.sakaiproject.tool.api.ToolManager;
 import org.sakaiproject.tool.gradebook.Gradebook;
-import org.sakaiproject.user.api.User;
 import org.sakaiproject.user.api.UserDirectoryService;
+import org.sakaiproject.util.ResourceLoader;
 
 
 /**
@@ -56,17 +72,93 @@ public class GradebookNgBusinessService {
 	@Setter
 	private GradebookService gradebookService;
 	
+	/**
+	 * Load grades per assignment for all students (true) or per student per assignment (false). Defaults to true.
+	 */
+	@Setter
+	private boolean bulkGradeLoading = true;
+	
+	@Setter
+	private GradeMatrixCache gradeMatrixCache;
+	
+	@Setter
+	private RosterCache rosterCache;
+	
+	@Setter
+	private GradebookVersions gradebookVersions;
+	
+	@Setter
+	private UserPreferencesStore userPreferencesStore;
+	
+	@Setter
+	private SessionManager sessionManager;
+	
+	@Setter
+	private ThreadLocalManager threadLocalManager;
+	
+	/**
+	 * Load the rows of large matrices in chunks on a thread pool. Defaults to false.
+	 */
+	@Setter
+	private boolean parallelGradeLoading = false;
+	
+	/**
+	 * Size of the thread pool shared by all parallel matrix builds. Defaults to 4.
+	 */
+	@Setter
+	private int parallelThreads = 4;
+	
+	/**
+	 * Number of students loaded by each task. Defaults to 250.
+	 */
+	@Setter
+	private int parallelChunkSize = 250;
+	
+	/**
+	 * Optional write behind queue for grade edits, see {@link #queueGrade(Long, String, String, String)}
+	 */
+	@Setter
+	private GradeWriteQueue gradeWriteQueue;
+	
+	/**
+	 * Optional, publishes the changes made here so other nodes can update their caches
+	 */
+	@Setter
+	private GradebookChanges gradebookChanges;
+	
+	private ExecutorService matrixExecutor;
+	
+	
+	public void init() {
+		if(this.parallelGradeLoading) {
+			this.matrixExecutor = Executors.newFixedThreadPool(this.parallelThreads, new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+				
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "gradebookng-matrix-" + this.count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+	}
+	
+	public void destroy() {
+		if(this.matrixExecutor != null) {
+			this.matrixExecutor.shutdownNow();
+		}
+	}
+	
 	
 	/**
-	 * Get a list of users in the current site that can have grades
+	 * Get a list of users in the current site that can have grades, from the {@link RosterCache}
 	 * 
 	 * @return a list of users or null if none
 	 */
-	public List<User> getGradeableUsers() {
+	public List<RosterEntry> getGradeableUsers() {
 		try {
-			String siteId = this.getCurrentSiteId();
-			Set<String> userIds = siteService.getSite(siteId).getUsersIsAllowed("gradebook.viewOwnGrades");			
-			return userDirectoryService.getUsers(userIds);
+			return this.getRoster(this.getCurrentSiteId());
 		} catch (IdUnusedException e) {
 			return null;
 		}
@@ -80,8 +172,16 @@ public class GradebookNgBusinessService {
 	 */
 	private Gradebook getGradebook() {
 		String siteId = this.getCurrentSiteId();
+		
+		Gradebook gradebook = RequestCache.get("gradebook:" + siteId);
+		if(gradebook != null) {
+			return gradebook;
+		}
+		
 		try {
-			Gradebook gradebook = (Gradebook)gradebookService.getGradebook(siteId);
+			RequestMetrics.count("gradebookService.getGradebook");
+			gradebook = (Gradebook)gradebookService.getGradebook(siteId);
+			RequestCache.put("gradebook:" + siteId, gradebook);
 			return gradebook;
 		} catch (GradebookNotFoundException e) {
 			log.error("No gradebook in site: " + siteId);
@@ -89,6 +189,57 @@ public class GradebookNgBusinessService {
 		}
 	}
 	
+	/**
+	 * Helper to get the users in a site that can have grades, only looked up once per request
+	 * 
+	 * @param siteId
+	 * @return
+	 * @throws IdUnusedException
+	 */
+	private List<RosterEntry> getRoster(final String siteId) throws IdUnusedException {
+		List<RosterEntry> roster = RequestCache.get("roster:" + siteId);
+		if(roster == null) {
+			roster = this.rosterCache.getRoster(siteId);
+			RequestCache.put("roster:" + siteId, roster);
+		}
+		return roster;
+	}
+	
+	/**
+	 * Helper to get the ids of the users in a site that can have grades, in roster order, only worked out once per request
+	 * 
+	 * @param siteId
+	 * @return
+	 * @throws IdUnusedException
+	 */
+	private Set<String> getGradeableUserIds(final String siteId) throws IdUnusedException {
+		Set<String> userIds = RequestCache.get("gradeable:" + siteId);
+		if(userIds == null) {
+			userIds = new LinkedHashSet<String>();
+			for(RosterEntry student: this.getRoster(siteId)) {
+				userIds.add(student.getId());
+			}
+			RequestCache.put("gradeable:" + siteId, userIds);
+		}
+		return userIds;
+	}
+	
+	/**
+	 * Helper to check if the current user can grade everyone in the gradebook, only checked once per request
+	 * 
+	 * @param gradebookUid
+	 * @return
+	 */
+	private boolean currentUserCanGradeAll(final String gradebookUid) {
+		Boolean gradeAll = RequestCache.get("gradeAll:" + gradebookUid);
+		if(gradeAll == null) {
+			RequestMetrics.count("gradebookService.currentUserHasGradeAllPerm");
+			gradeAll = gradebookService.currentUserHasGradeAllPerm(gradebookUid);
+			RequestCache.put("gradeAll:" + gradebookUid, gradeAll);
+		}
+		return gradeAll;
+	}
+	
 	/**
 	 * Get a list of assignments in the gradebook in the current site
 	 * 
@@ -97,13 +248,38 @@ public class GradebookNgBusinessService {
 	public List<Assignment> getGradebookAssignments() {
 		Gradebook gradebook = getGradebook();
 		if(gradebook != null) {
-			List<Assignment> assignments = gradebookService.getAssignments(gradebook.getUid());
+			List<Assignment> assignments = RequestCache.get("assignments:" + gradebook.getUid());
+			if(assignments != null) {
+				return assignments;
+			}
+			RequestMetrics.count("gradebookService.getAssignments");
+			assignments = gradebookService.getAssignments(gradebook.getUid());
 			assignments = sortAssignments(assignments);			
+			RequestCache.put("assignments:" + gradebook.getUid(), assignments);
 			return assignments;
 		}
 		return null;
 	}
 	
+	/**
+	 * Get an assignment in the gradebook in the current site
+	 * 
+	 * @param assignmentId
+	 * @return the assignment or null if it doesn't exist
+	 */
+	public Assignment getGradebookAssignment(final Long assignmentId) {
+		GradeMatrix matrix = this.gradeMatrixCache.peek(this.getCurrentSiteId());
+		List<Assignment> assignments = (matrix != null) ? matrix.getAssignments() : this.getGradebookAssignments();
+		if(assignments != null) {
+			for(Assignment assignment: assignments) {
+				if(assignment.getId().equals(assignmentId)) {
+					return assignment;
+				}
+			}
+		}
+		return null;
+	}
+	
 	/**
 	 * Sort the assignment list according to some criteria
 	 * 
@@ -132,16 +308,14 @@ public class GradebookNgBusinessService {
 		if(gradebook != null) {
 			
 			//get course grades and use entered grades preferentially, if they exist
+	        RequestMetrics.count("gradebookService.getCalculatedCourseGrade");
 	        Map<String, String> courseGrades = gradebookService.getCalculatedCourseGrade(gradebook.getUid()); 
+	        RequestMetrics.count("gradebookService.getEnteredCourseGrade");
 	        Map<String, String> enteredGrades = gradebookService.getEnteredCourseGrade(gradebook.getUid());
 	          
-	        Iterator<String> gradeOverrides = enteredGrades.keySet().iterator();
-	        while(gradeOverrides.hasNext()) {
-	        	String username = gradeOverrides.next();
-	        	String override = enteredGrades.get(username);
-	        	
-	        	if(StringUtils.isNotBlank(override)) {
-	        		courseGrades.put(username, override);
+	        for(Map.Entry<String, String> entry: enteredGrades.entrySet()) {
+	        	if(StringUtils.isNotBlank(entry.getValue())) {
+	        		courseGrades.put(entry.getKey(), entry.getValue());
 	        	}
 	        }
 	        
@@ -151,6 +325,79 @@ public class GradebookNgBusinessService {
 		return Collections.emptyMap();
 	}
 	
+	/**
+	 * Get the course grade for a single student, using a grade override preferentially over a calculated one.
+	 * 
+	 * This is used to build a single row outside of the cached matrix. The calculation is skipped entirely if the student has an override.
+	 * 
+	 * @param gradebookUid
+	 * @param studentUuid
+	 * @return the course grade or null if there is none
+	 */
+	private String getCourseGrade(final String gradebookUid, final String studentUuid) {
+		RequestMetrics.count("gradebookService.getEnteredCourseGrade");
+		String override = gradebookService.getEnteredCourseGrade(gradebookUid).get(studentUuid);
+		if(StringUtils.isNotBlank(override)) {
+			return override;
+		}
+		RequestMetrics.count("gradebookService.getCalculatedCourseGrade");
+		return gradebookService.getCalculatedCourseGrade(gradebookUid).get(studentUuid);
+	}
+	
+	/**
+	 * Recalculate the course grades for every student in the cached matrix for the current site.
+	 * 
+	 * Saving grades only marks the affected students' course grades stale, see {@link #refreshCourseGrades(GradeMatrix)}.
+	 * This should be called when something changes that affects everyone's course grade, eg assignment points, weightings or categories.
+	 */
+	public void recalculateCourseGrades() {
+		GradeMatrix matrix = this.gradeMatrixCache.peek(this.getCurrentSiteId());
+		if(matrix != null) {
+			matrix.updateCourseGrades(this.getCourseGrades());
+		}
+		
+		Gradebook gradebook = this.getGradebook();
+		if(gradebook == null) {
+			return;
+		}
+		this.gradebookChanged(this.getCurrentSiteId(), gradebook.getUid());
+		if(this.gradebookChanges != null) {
+			this.gradebookChanges.courseGradeChanged(gradebook.getUid(), null);
+		}
+	}
+	
+	/**
+	 * Drop everything cached for the gradebook in the current site. This should be called when an assignment is added, removed or changed,
+	 * as the matrix has a column per assignment.
+	 */
+	public void assignmentsChanged() {
+		Gradebook gradebook = this.getGradebook();
+		if(gradebook == null) {
+			return;
+		}
+		RequestCache.remove("assignments:" + gradebook.getUid());
+		this.gradeMatrixCache.invalidate(this.getCurrentSiteId());
+		this.gradebookVersions.bump(gradebook.getUid());
+		if(this.gradebookChanges != null) {
+			this.gradebookChanges.assignmentsChanged(gradebook.getUid());
+		}
+	}
+	
+	/**
+	 * Move a gradebook on to a new version after a change made here. The cached matrix for the site moves on with it
+	 * as long as it was up to date before, as the change has already been applied to it.
+	 * 
+	 * @param siteId
+	 * @param gradebookUid
+	 */
+	private void gradebookChanged(final String siteId, final String gradebookUid) {
+		long version = this.gradebookVersions.bump(gradebookUid);
+		GradeMatrix matrix = this.gradeMatrixCache.peek(siteId);
+		if(matrix != null) {
+			matrix.advanceGradebookVersion(version - 1, version);
+		}
+	}
+	
 	/**
 	 * Save the grade and comment for a student's assignment
 	 * 
@@ -169,126 +416,1120 @@ public class GradebookNgBusinessService {
 		}
 		
 		try {
+			RequestMetrics.count("gradebookService.saveGradeAndCommentForStudent");
 			gradebookService.saveGradeAndCommentForStudent(gradebook.getUid(), assignmentId, studentUuid, grade, comment);
 		} catch (InvalidGradeException | GradebookNotFoundException | AssessmentNotFoundException e) {
 			log.error("An error occurred saving the grade. " + e.getClass() + ": " + e.getMessage());
 			return false;
 		}
+		
+		this.updateCachedGrade(gradebook.getUid(), assignmentId, studentUuid);
+		this.gradebookChanged(this.getCurrentSiteId(), gradebook.getUid());
+		if(this.gradebookChanges != null) {
+			this.gradebookChanges.gradeChanged(gradebook.getUid(), studentUuid);
+		}
+		
 		return true;
 	}
 	
-	
 	/**
-	 * Build the matrix of assignments, students and grades
+	 * Write a saved grade through to the cached matrix for the current site, if there is one.
+	 * The cell is reread so it matches what the gradebook service stored, and the course grade for the student is marked stale
+	 * so it is only recalculated when the row is next read.
+	 * If the cell cannot be applied (eg a new assignment or student) the cached matrix is dropped instead.
 	 * 
-	 * In the future this can be expanded to be given a list of students so we can do scrolling
-	 * @return
+	 * @param gradebookUid
+	 * @param assignmentId
+	 * @param studentUuid
 	 */
-	public List<StudentGrades> buildGradeMatrix() {
+	private void updateCachedGrade(final String gradebookUid, final Long assignmentId, final String studentUuid) {
+		String siteId = this.getCurrentSiteId();
+		GradeMatrix matrix = this.gradeMatrixCache.peek(siteId);
+		if(matrix == null) {
+			return;
+		}
 		
-		List<User> students = this.getGradeableUsers();
-		List<Assignment> assignments = this.getGradebookAssignments();
+		RequestMetrics.count("gradebookService.getGradeDefinitionForStudentForItem");
+		GradeDefinition gradeDefinition = gradebookService.getGradeDefinitionForStudentForItem(gradebookUid, assignmentId, studentUuid);
+		if(!matrix.updateGrade(studentUuid, assignmentId, new GradeInfo(gradeDefinition))) {
+			this.gradeMatrixCache.invalidate(siteId);
+			return;
+		}
 		
+		matrix.markCourseGradeStale(studentUuid);
+	}
+	
+	/**
+	 * Recalculate the course grades that were marked stale in the matrix by grades saved here. This is one call for all of them,
+	 * so saving a run of grades costs nothing until the rows are read again, eg when the course grade cells render.
+	 * 
+	 * @param matrix
+	 * @return the matrix
+	 */
+	private GradeMatrix refreshCourseGrades(final GradeMatrix matrix) {
+		Set<String> stale = matrix.takeStaleCourseGrades();
+		if(stale.isEmpty()) {
+			return matrix;
+		}
 		Map<String,String> courseGrades = this.getCourseGrades();
-		
-		//NOTES:
-		//a reorder of columns can happen client side and be saved as then any refresh is going to refetch the data and it will have the new order applied
-		
-		List<StudentGrades> rval = new ArrayList<StudentGrades>();
-		
+		for(String studentUuid: stale) {
+			matrix.updateCourseGrade(studentUuid, courseGrades.get(studentUuid));
+		}
+		return matrix;
+	}
+
+	/**
+	 * Save a batch of grades and comments, eg a whole column or a block pasted from a spreadsheet.
+	 *
+	 * Every update is checked up front, so an unknown assignment or student or an invalid grade fails only that cell.
+	 * The remaining cells are saved with one call to the gradebook service per assignment, each of which is its own transaction.
+	 * If the same cell appears more than once the last update wins. The course grades of the affected students are recalculated once, when the rows are next read.
+	 *
+	 * @param updates the cells to save
+	 * @return the saved and failed cells
+	 */
+	public GradeSaveResult saveGrades(final List<GradeUpdate> updates) {
+	
+		GradeSaveResult result = new GradeSaveResult();
+	
 		Gradebook gradebook = this.getGradebook();
-		if(gradebook == null) {
-			return null;
+		Set<String> studentUuids = null;
+		try {
+			studentUuids = this.getGradeableUserIds(this.getCurrentSiteId());
+		} catch (IdUnusedException e) {
+			log.error("Site not found when saving grades: " + this.getCurrentSiteId());
 		}
-		
-		//TODO this could be optimised to iterate the assignments instead, and pass the list of users and use getGradesForStudentsForItem,
-		//however the logic needs to be reqorked so we can capture the user info
-		//currently storing the full grade definition too, this may be unnecessary
-		
-		for(User student: students) {
-			
-			StudentGrades sg = new StudentGrades(student);
-			
-			for(Assignment assignment: assignments) {
-				GradeDefinition gradeDefinition = gradebookService.getGradeDefinitionForStudentForItem(gradebook.getUid(), assignment.getId(), student.getId());
-				sg.addGrade(assignment.getId(), new GradeInfo(gradeDefinition));
+		if(gradebook == null || studentUuids == null) {
+			for(GradeUpdate update: updates) {
+				result.addFailed(update, GradeSaveResult.Failure.ERROR);
 			}
-			
-			sg.setCourseGrade(courseGrades.get(student.getId()));
-			
-			rval.add(sg);
-			
+			return result;
 		}
-		return rval;
-		
+	
+		final String gradebookUid = gradebook.getUid();
+	
+		Set<Long> assignmentIds = new HashSet<Long>();
+		for(Assignment assignment: this.getGradebookAssignments()) {
+			assignmentIds.add(assignment.getId());
+		}
+	
+		//group by assignment then student, keeping every update for a cell so superseded ones share the outcome of the last
+		Map<Long, Map<String, List<GradeUpdate>>> cells = new LinkedHashMap<Long, Map<String, List<GradeUpdate>>>();
+		for(GradeUpdate update: updates) {
+			if(!assignmentIds.contains(update.getAssignmentId())) {
+				result.addFailed(update, GradeSaveResult.Failure.UNKNOWN_ASSIGNMENT);
+				continue;
+			}
+			if(!studentUuids.contains(update.getStudentUuid())) {
+				result.addFailed(update, GradeSaveResult.Failure.UNKNOWN_STUDENT);
+				continue;
+			}
+			Map<String, List<GradeUpdate>> column = cells.get(update.getAssignmentId());
+			if(column == null) {
+				column = new LinkedHashMap<String, List<GradeUpdate>>();
+				cells.put(update.getAssignmentId(), column);
+			}
+			List<GradeUpdate> cell = column.get(update.getStudentUuid());
+			if(cell == null) {
+				cell = new ArrayList<GradeUpdate>(1);
+				column.put(update.getStudentUuid(), cell);
+			}
+			cell.add(update);
+		}
+	
+		Map<Long, List<String>> saved = new LinkedHashMap<Long, List<String>>();
+	
+		for(Map.Entry<Long, Map<String, List<GradeUpdate>>> column: cells.entrySet()) {
+			Long assignmentId = column.getKey();
+	
+			//validate the whole column in one call
+			Map<String, String> grades = new HashMap<String, String>();
+			for(Map.Entry<String, List<GradeUpdate>> cell: column.getValue().entrySet()) {
+				grades.put(cell.getKey(), last(cell.getValue()).getGrade());
+			}
+			RequestMetrics.count("gradebookService.identifyStudentsWithInvalidGrades");
+			Set<String> invalid = new HashSet<String>(gradebookService.identifyStudentsWithInvalidGrades(gradebookUid, grades));
+	
+			List<GradeDefinition> gradeDefinitions = new ArrayList<GradeDefinition>();
+			List<List<GradeUpdate>> valid = new ArrayList<List<GradeUpdate>>();
+			for(Map.Entry<String, List<GradeUpdate>> cell: column.getValue().entrySet()) {
+				if(invalid.contains(cell.getKey())) {
+					for(GradeUpdate update: cell.getValue()) {
+						result.addFailed(update, GradeSaveResult.Failure.INVALID_GRADE);
+					}
+					continue;
+				}
+				GradeUpdate update = last(cell.getValue());
+				GradeDefinition gradeDefinition = new GradeDefinition();
+				gradeDefinition.setStudentUid(update.getStudentUuid());
+				gradeDefinition.setGrade(update.getGrade());
+				gradeDefinition.setGradeComment(update.getComment());
+				gradeDefinitions.add(gradeDefinition);
+				valid.add(cell.getValue());
+			}
+			if(gradeDefinitions.isEmpty()) {
+				continue;
+			}
+	
+			try {
+				RequestMetrics.count("gradebookService.saveGradesAndComments");
+				gradebookService.saveGradesAndComments(gradebookUid, assignmentId, gradeDefinitions);
+			} catch (InvalidGradeException | GradebookNotFoundException | AssessmentNotFoundException e) {
+				log.error("An error occurred saving the grades for assignment " + assignmentId + ". " + e.getClass() + ": " + e.getMessage());
+				for(List<GradeUpdate> cell: valid) {
+					for(GradeUpdate update: cell) {
+						result.addFailed(update, GradeSaveResult.Failure.ERROR);
+					}
+				}
+				continue;
+			}
+	
+			List<String> savedStudents = new ArrayList<String>(valid.size());
+			for(List<GradeUpdate> cell: valid) {
+				for(GradeUpdate update: cell) {
+					result.addSaved(update);
+				}
+				savedStudents.add(last(cell).getStudentUuid());
+			}
+			saved.put(assignmentId, savedStudents);
+		}
+	
+		if(!saved.isEmpty()) {
+			this.updateCachedGrades(gradebookUid, saved);
+			this.gradebookChanged(this.getCurrentSiteId(), gradebookUid);
 			
-	}
-
+			if(this.gradebookChanges != null) {
+				Set<String> changed = new HashSet<String>();
+				for(List<String> students: saved.values()) {
+					changed.addAll(students);
+				}
+				this.gradebookChanges.gradesChanged(gradebookUid, changed);
+			}
+		}
 	
+		return result;
+	}
 	
 	/**
-	 * Get the user prefs for this gradebook instance
-	 * @param userUuid
+	 * Save a batch of grades for a given site, for use outside of a request to the tool. The caller must have begun a {@link RequestCache}.
+	 * 
+	 * @param siteId
+	 * @param updates
 	 * @return
 	 */
-	public GradebookUserPreferences getUserPrefs() {
-		String siteId = this.getCurrentSiteId();
-		String userUuid = this.getCurrentUserUuid();
+	GradeSaveResult saveGrades(final String siteId, final List<GradeUpdate> updates) {
+		RequestCache.put("siteId", siteId);
+		return this.saveGrades(updates);
+	}
+	
+	/**
+	 * Save a grade and comment for a student's assignment, without waiting for it to be stored if the write behind queue is enabled.
+	 * 
+	 * The grade is validated up front the same way a save would, so an invalid grade is rejected straight away, and so is an edit the current user
+	 * is not allowed to make for the student, as the permission would otherwise only be checked by the worker. A queued edit by a user that can
+	 * grade all is applied to the cached matrix and the gradebook moves on to a new version. If the write later fails, the row is reloaded from the gradebook service
+	 * (see {@link #queuedGradesFailed(String, Collection)}) and the failure shows up in {@link #getGradeWriteStatus()}.
+	 * If the queue is not enabled this is the same as {@link #saveGrade(Long, String, String, String)}.
+	 * 
+	 * @param assignmentId	id of the gradebook assignment
+	 * @param studentUuid	uuid of the user
+	 * @param grade			grade for the user
+	 * @param comment		optional comment for the grade
+	 * @return false if the grade could not be saved, true if it was saved or queued
+	 */
+	public boolean queueGrade(final Long assignmentId, final String studentUuid, final String grade, final String comment) {
+		if(this.gradeWriteQueue == null || !this.gradeWriteQueue.isEnabled()) {
+			return this.saveGrade(assignmentId, studentUuid, grade, comment);
+		}
 		
-		try {
-			Site site = siteService.getSite(siteId);
-			
-			ResourceProperties props = site.getProperties();
-			String xml = (String) props.get(GradebookUserPreferences.getPropKey(userUuid));
-			
-			GradebookUserPreferences prefs = (GradebookUserPreferences) XmlMarshaller.unmarshall(xml);
-			return prefs;
-			
-		} catch (IdUnusedException | JAXBException e) {
-			e.printStackTrace();
+		Gradebook gradebook = this.getGradebook();
+		if(gradebook == null || (grade != null && !this.isGradeValid(grade))) {
+			return false;
 		}
 		
+		RequestMetrics.count("gradebookService.isUserAbleToGradeItemForStudent");
+		if(!this.gradebookService.isUserAbleToGradeItemForStudent(gradebook.getUid(), assignmentId, studentUuid)) {
+			log.warn("User " + this.getCurrentUserUuid() + " is not able to grade item " + assignmentId + " for student " + studentUuid);
+			return false;
+		}
 		
-		return null;
+		String siteId = this.getCurrentSiteId();
+		this.gradeWriteQueue.add(siteId, new GradeUpdate(assignmentId, studentUuid, grade, comment));
+		
+		//the cached matrix is shared by everyone that can grade all, so only their edits go into it before they are stored
+		if(!this.currentUserCanGradeAll(gradebook.getUid())) {
+			return true;
+		}
+		GradeMatrix matrix = this.gradeMatrixCache.peek(siteId);
+		if(matrix != null && !matrix.updateGrade(studentUuid, assignmentId, new GradeInfo(grade, comment))) {
+			this.gradeMatrixCache.invalidate(siteId);
+		}
+		this.gradebookChanged(siteId, gradebook.getUid());
+		return true;
 	}
 	
+	/**
+	 * Called by the write behind queue when it gives up on edits. They were applied to the cached matrix when they were queued,
+	 * so the rows are marked stale and the gradebook moves on to a new version, and the rows are reloaded before the matrix is next used.
+	 * 
+	 * @param siteId
+	 * @param updates the edits that were not saved
+	 */
+	void queuedGradesFailed(final String siteId, final Collection<GradeUpdate> updates) {
+		GradeMatrix matrix = this.gradeMatrixCache.peek(siteId);
+		if(matrix == null) {
+			return;
+		}
+		for(GradeUpdate update: updates) {
+			if(!matrix.markStale(update.getStudentUuid())) {
+				this.gradeMatrixCache.invalidate(siteId);
+				break;
+			}
+		}
+		//after the rows are marked, see GradebookVersions
+		this.gradebookVersions.bump(matrix.getGradebookUid());
+	}
 	
 	/**
-	 * Helper to save user prefs
+	 * Get the status of the queued grade edits for the current site
 	 * 
-	 * @param prefs
+	 * @return the status, which is always durable if the write behind queue is not enabled
 	 */
-	public void saveUserPrefs (GradebookUserPreferences prefs) {
+	public GradeWriteStatus getGradeWriteStatus() {
+		if(this.gradeWriteQueue == null) {
+			return new GradeWriteStatus(0, Collections.<GradeUpdate, GradeSaveResult.Failure>emptyMap());
+		}
+		return this.gradeWriteQueue.getStatus(this.getCurrentSiteId());
+	}
+	
+	/**
+	 * Write a batch of saved grades through to the cached matrix for the current site, if there is one.
+	 * Each column is reread in one call, and the course grades for the affected students are marked stale.
+	 *
+	 * @param gradebookUid
+	 * @param saved map of assignment id to the students saved for it
+	 */
+	private void updateCachedGrades(final String gradebookUid, final Map<Long, List<String>> saved) {
 		String siteId = this.getCurrentSiteId();
-		
-		try {
-			Site site = siteService.getSite(siteId);
-			
-			ResourcePropertiesEdit props = site.getPropertiesEdit();
-			props.addProperty(GradebookUserPreferences.getPropKey(prefs.getUserUuid()), XmlMarshaller.marshal(prefs));
-			siteService.save(site);
-			
-		} catch (IdUnusedException | JAXBException | PermissionException e) {
-			e.printStackTrace();
+		GradeMatrix matrix = this.gradeMatrixCache.peek(siteId);
+		if(matrix == null) {
+			return;
+		}
+	
+		for(Map.Entry<Long, List<String>> column: saved.entrySet()) {
+			RequestMetrics.count("gradebookService.getGradesForStudentsForItem");
+			List<GradeDefinition> gradeDefinitions = gradebookService.getGradesForStudentsForItem(gradebookUid, column.getKey(), column.getValue());
+	
+			Map<String, GradeDefinition> byStudent = new HashMap<String, GradeDefinition>();
+			for(GradeDefinition gradeDefinition: gradeDefinitions) {
+				byStudent.put(gradeDefinition.getStudentUid(), gradeDefinition);
+			}
+	
+			for(String studentUuid: column.getValue()) {
+				GradeDefinition gradeDefinition = byStudent.get(studentUuid);
+				GradeInfo gradeInfo = (gradeDefinition != null) ? new GradeInfo(gradeDefinition) : new GradeInfo(null, null);
+				if(!matrix.updateGrade(studentUuid, column.getKey(), gradeInfo)) {
+					this.gradeMatrixCache.invalidate(siteId);
+					return;
+				}
+				matrix.markCourseGradeStale(studentUuid);
+			}
 		}
-		 
 	}
 	
+	private static GradeUpdate last(final List<GradeUpdate> updates) {
+		return updates.get(updates.size() - 1);
+	}
+
 	
 	/**
-	 * Helper to get siteid
+	 * Build the matrix of assignments, students and grades
+	 * 
+	 * In the future this can be expanded to be given a list of students so we can do scrolling
+	 * 
+	 * The grades are loaded per assignment for all students at once unless bulkGradeLoading has been switched off,
+	 * in which case each cell is looked up individually.
+	 * 
+	 * The matrix is cached per site for users that can grade the whole gradebook. Anyone else gets a freshly built matrix
+	 * so that the gradebook service can apply its own permission checks.
 	 * @return
 	 */
-	private String getCurrentSiteId() {
-		return this.toolManager.getCurrentPlacement().getContext();
+	public List<StudentGrades> buildGradeMatrix() {
+		GradeMatrix matrix = this.getGradeMatrix();
+		if(matrix == null) {
+			return null;
+		}
+		return this.refreshCourseGrades(matrix).getStudentGrades();
 	}
 	
 	/**
-	 * Helper to get user uuid
-	 * @return
+	 * Get the matrix for the current site, from the cache if possible
+	 * 
+	 * @return the matrix or null if there is no gradebook
+	 */
+	private GradeMatrix getGradeMatrix() {
+		
+		String siteId = this.getCurrentSiteId();
+		
+		Gradebook gradebook = this.getGradebook();
+		if(gradebook == null) {
+			return null;
+		}
+		
+		boolean cacheable = this.currentUserCanGradeAll(gradebook.getUid());
+		
+		GradeMatrix matrix = null;
+		if(cacheable) {
+			matrix = this.getCachedGradeMatrix(siteId);
+		}
+		
+		if(matrix == null) {
+			//a rebuild can pick up changes made outside of this tool, so it always gets a new version. Bumped first so the matrix is never older than its version
+			long version = cacheable ? this.gradebookVersions.bump(gradebook.getUid()) : 0;
+			matrix = this.loadGradeMatrix(siteId, gradebook.getUid());
+			if(cacheable) {
+				matrix.setGradebookVersion(version);
+				this.gradeMatrixCache.put(matrix);
+			}
+		}
+		
+		return matrix;
+	}
+	
+	/**
+	 * Get the cached matrix for a site, bringing it up to date with the current version of the gradebook.
+	 * 
+	 * If the versions match it is used as is. Otherwise anything that was marked stale by a change made elsewhere is reloaded,
+	 * ie only the stale rows and the course grades if they are stale. If the gradebook has moved on without anything being marked stale,
+	 * the change can't be applied to the matrix and it is dropped.
+	 * 
+	 * @param siteId
+	 * @return the matrix or null if it is not cached, or had to be dropped as a student has joined or left
+	 */
+	private GradeMatrix getCachedGradeMatrix(final String siteId) {
+		GradeMatrix matrix = this.gradeMatrixCache.get(siteId);
+		if(matrix == null) {
+			return null;
+		}
+		
+		//changes are marked stale before the version is bumped, so everything up to this version is marked by now
+		long version = this.gradebookVersions.getVersion(matrix.getGradebookUid());
+		if(matrix.getGradebookVersion() == version) {
+			return matrix;
+		}
+		
+		boolean courseGradesStale = matrix.takeCourseGradesStale();
+		if(courseGradesStale) {
+			matrix.updateCourseGrades(this.getCourseGrades());
+		}
+		
+		Set<String> stale = matrix.takeStaleStudents();
+		if(stale.isEmpty()) {
+			if(!courseGradesStale) {
+				this.gradeMatrixCache.invalidate(siteId);
+				return null;
+			}
+			matrix.setGradebookVersion(version);
+			return matrix;
+		}
+		
+		long start = System.nanoTime();
+		
+		List<RosterEntry> students = new ArrayList<RosterEntry>(stale.size());
+		List<RosterEntry> roster = this.getGradeableUsers();
+		if(roster != null) {
+			for(RosterEntry student: roster) {
+				if(stale.contains(student.getId())) {
+					students.add(student);
+				}
+			}
+		}
+		if(students.size() != stale.size()) {
+			this.gradeMatrixCache.invalidate(siteId);
+			return null;
+		}
+		
+		List<StudentGrades> rows = this.loadRows(matrix.getGradebookUid(), students, matrix.getAssignments(), matrix.getAssignmentIndex(), this.getCourseGrades());
+		for(StudentGrades row: rows) {
+			if(!matrix.replaceStudentGrades(row)) {
+				this.gradeMatrixCache.invalidate(siteId);
+				return null;
+			}
+		}
+		
+		matrix.setGradebookVersion(version);
+		RequestMetrics.time("matrix.refresh", start);
+		return matrix;
+	}
+	
+	/**
+	 * Build a window of the matrix, for paging through large rosters. The window is taken from the cached matrix if there is one,
+	 * otherwise only the students in the window have their grades loaded.
+	 * 
+	 * @param first	index of the first student to return
+	 * @param count	maximum number of students to return
+	 * @return list of {@link StudentGrades} for the window, in roster order. May be empty.
+	 */
+	public List<StudentGrades> buildGradeMatrix(final int first, final int count) {
+		
+		String siteId = this.getCurrentSiteId();
+		
+		Gradebook gradebook = this.getGradebook();
+		if(gradebook == null) {
+			return Collections.emptyList();
+		}
+		
+		if(this.currentUserCanGradeAll(gradebook.getUid())) {
+			GradeMatrix matrix = this.getCachedGradeMatrix(siteId);
+			if(matrix != null) {
+				return this.refreshCourseGrades(matrix).getStudentGrades(first, count);
+			}
+		}
+		
+		long start = System.nanoTime();
+		
+		List<RosterEntry> students = this.getGradeableUsers();
+		if(students == null || first >= students.size()) {
+			return Collections.emptyList();
+		}
+		students = students.subList(first, Math.min(first + count, students.size()));
+		
+		List<Assignment> assignments = this.getGradebookAssignments();
+		
+		List<StudentGrades> rows = this.loadRows(gradebook.getUid(), students, assignments, new AssignmentIndex(assignments), this.getCourseGrades());
+		RequestMetrics.time("matrix.window", start);
+		return rows;
+	}
+	
+	/**
+	 * Build a sorted and optionally filtered window of the matrix.
+	 * 
+	 * If the user can grade all and the matrix is cached, the window is taken from it. The sorted order and search index are kept with
+	 * the cached matrix, so paging, sorting again or searching does not rebuild anything.
+	 * 
+	 * Otherwise only what is needed to sort and search is loaded for every student (see {@link #getSortKeys(String, String, MatrixSort)}),
+	 * and then the full rows are loaded just for the students in the window.
+	 * 
+	 * @param first index of the first row
+	 * @param count maximum number of rows
+	 * @param sort how to sort the rows
+	 * @param search only include students whose name or eid match, or null for all students
+	 * @return
+	 */
+	public List<StudentGrades> buildGradeMatrix(final int first, final int count, final MatrixSort sort, final String search) {
+		
+		String siteId = this.getCurrentSiteId();
+		
+		Gradebook gradebook = this.getGradebook();
+		if(gradebook == null) {
+			return Collections.emptyList();
+		}
+		
+		if(this.currentUserCanGradeAll(gradebook.getUid())) {
+			GradeMatrix matrix = this.getCachedGradeMatrix(siteId);
+			if(matrix != null) {
+				long start = System.nanoTime();
+				List<StudentGrades> rows = this.refreshCourseGrades(matrix).getStudentGrades(first, count, sort, this.getUserLocale(), search);
+				RequestMetrics.time("matrix.sort", start);
+				return rows;
+			}
+		}
+		
+		long start = System.nanoTime();
+		
+		GradeMatrix keys = this.getSortKeys(siteId, gradebook.getUid(), sort);
+		List<StudentGrades> window = keys.getStudentGrades(first, count, sort, this.getUserLocale(), search);
+		if(window.isEmpty()) {
+			return Collections.emptyList();
+		}
+		
+		Map<String, RosterEntry> roster = new HashMap<String, RosterEntry>();
+		for(RosterEntry student: this.getGradeableUsers()) {
+			roster.put(student.getId(), student);
+		}
+		List<RosterEntry> students = new ArrayList<RosterEntry>(window.size());
+		for(StudentGrades row: window) {
+			students.add(roster.get(row.getStudentUuid()));
+		}
+		
+		List<Assignment> assignments = this.getGradebookAssignments();
+		
+		List<StudentGrades> rows = this.loadRows(gradebook.getUid(), students, assignments, new AssignmentIndex(assignments), this.getCourseGrades());
+		RequestMetrics.time("matrix.sortedWindow", start);
+		return rows;
+	}
+	
+	/**
+	 * Get a matrix of every student in the site holding only what is needed to sort and search: the names and eids,
+	 * plus the grades for the assignment or the course grades if sorting by those. This is one call to the gradebook service at most,
+	 * rather than loading every grade. Only built once per request.
+	 * 
+	 * @param siteId
+	 * @param gradebookUid
+	 * @param sort the sort, or null if only searching
+	 * @return
+	 */
+	private GradeMatrix getSortKeys(final String siteId, final String gradebookUid, final MatrixSort sort) {
+		String cacheKey = "sortKeys:" + siteId + ":" + ((sort != null) ? sort.getKey() : "");
+		GradeMatrix keys = RequestCache.get(cacheKey);
+		if(keys != null) {
+			return keys;
+		}
+		
+		List<RosterEntry> students = this.getGradeableUsers();
+		if(students == null) {
+			students = Collections.emptyList();
+		}
+		
+		List<Assignment> keyAssignments = Collections.emptyList();
+		Map<String, GradeDefinition> grades = Collections.emptyMap();
+		if(sort != null && sort.getAssignmentId() != null) {
+			Assignment assignment = this.getGradebookAssignment(sort.getAssignmentId());
+			if(assignment != null) {
+				keyAssignments = Collections.singletonList(assignment);
+				
+				List<String> studentUuids = new ArrayList<String>(students.size());
+				for(RosterEntry student: students) {
+					studentUuids.add(student.getId());
+				}
+				RequestMetrics.count("gradebookService.getGradesForStudentsForItem");
+				grades = new HashMap<String, GradeDefinition>();
+				for(GradeDefinition gradeDefinition: gradebookService.getGradesForStudentsForItem(gradebookUid, assignment.getId(), studentUuids)) {
+					grades.put(gradeDefinition.getStudentUid(), gradeDefinition);
+				}
+			}
+		}
+		
+		Map<String,String> courseGrades = (sort != null && sort.isByCourseGrade()) ? this.getCourseGrades() : Collections.<String,String>emptyMap();
+		
+		AssignmentIndex assignmentIndex = new AssignmentIndex(keyAssignments);
+		List<StudentGrades> rows = new ArrayList<StudentGrades>(students.size());
+		for(RosterEntry student: students) {
+			StudentGrades row = new StudentGrades(student, assignmentIndex);
+			for(Assignment assignment: keyAssignments) {
+				GradeDefinition gradeDefinition = grades.get(student.getId());
+				if(gradeDefinition != null) {
+					row.addGrade(assignment.getId(), new GradeInfo(gradeDefinition));
+				}
+			}
+			row.setCourseGrade(courseGrades.get(student.getId()));
+			rows.add(row);
+		}
+		
+		keys = new GradeMatrix(siteId, gradebookUid, keyAssignments, assignmentIndex, rows);
+		RequestCache.put(cacheKey, keys);
+		return keys;
+	}
+	
+	/**
+	 * Get the version of the gradebook for the current site, eg for an ETag or to tell whether anything needs redrawing.
+	 * The version goes up whenever a grade, course grade, assignment or the roster changes, or the matrix is rebuilt.
+	 * If the matrix is cached it is brought up to date first, so it matches what is returned. If not, the version is answered
+	 * from {@link GradebookVersions} without building the matrix, so checking an ETag never costs a full load. Only users that can grade all get a version,
+	 * as anyone else has a matrix built for every request.
+	 * 
+	 * @return the version or null if there is none
+	 */
+	public Long getGradebookVersion() {
+		Gradebook gradebook = this.getGradebook();
+		if(gradebook == null || !this.currentUserCanGradeAll(gradebook.getUid())) {
+			return null;
+		}
+		GradeMatrix matrix = this.getCachedGradeMatrix(this.getCurrentSiteId());
+		return (matrix != null) ? matrix.getGradebookVersion() : this.gradebookVersions.getVersion(gradebook.getUid());
+	}
+	
+	/**
+	 * Get an ETag for a version of the gradebook in the current site. This is the version qualified by the node, as versions are per node
+	 * and the next request may go to another node behind a load balancer. The version is passed in rather than read again,
+	 * so the tag always matches the version a response was built from.
+	 * 
+	 * @param version the version from {@link #getGradebookVersion()}
+	 * @return the tag or null if there is no version
+	 */
+	public String getGradebookETag(final Long version) {
+		return (version != null) ? this.gradebookVersions.getNodeId() + "-" + version : null;
+	}
+	
+	/**
+	 * Get the statistics for an assignment, eg for the column header. These are kept with the cached matrix and updated as grades are saved,
+	 * so only users that can grade all get them, as anyone else would need a matrix built for every call.
+	 * 
+	 * @param assignmentId
+	 * @return the {@link AssignmentStatistics} or null if they are not available
+	 */
+	public AssignmentStatistics getAssignmentStatistics(final Long assignmentId) {
+		Gradebook gradebook = this.getGradebook();
+		if(gradebook == null || !this.currentUserCanGradeAll(gradebook.getUid())) {
+			return null;
+		}
+		GradeMatrix matrix = this.getGradeMatrix();
+		return (matrix != null) ? matrix.getAssignmentStatistics(assignmentId) : null;
+	}
+	
+	/**
+	 * Get the row of the matrix for a single student, from the cached matrix if possible.
+	 * 
+	 * @param studentUuid
+	 * @return the {@link StudentGrades} or null if the student is not gradeable in the current site
+	 */
+	public StudentGrades getStudentGrades(final String studentUuid) {
+		
+		Gradebook gradebook = this.getGradebook();
+		if(gradebook == null) {
+			return null;
+		}
+		
+		//for anyone that can grade all, the full matrix is loaded and cached as the other rows will be needed shortly
+		if(this.currentUserCanGradeAll(gradebook.getUid())) {
+			GradeMatrix matrix = this.getGradeMatrix();
+			return (matrix != null) ? this.refreshCourseGrades(matrix).getStudentGrades(studentUuid) : null;
+		}
+		
+		RosterEntry student = null;
+		List<RosterEntry> roster = this.getGradeableUsers();
+		if(roster != null) {
+			for(RosterEntry entry: roster) {
+				if(entry.getId().equals(studentUuid)) {
+					student = entry;
+					break;
+				}
+			}
+		}
+		if(student == null) {
+			return null;
+		}
+		
+		List<Assignment> assignments = this.getGradebookAssignments();
+		Map<String,String> courseGrades = Collections.singletonMap(studentUuid, this.getCourseGrade(gradebook.getUid(), studentUuid));
+		List<StudentGrades> rows = this.loadRows(gradebook.getUid(), Collections.singletonList(student), assignments, new AssignmentIndex(assignments), courseGrades);
+		return rows.get(0);
+	}
+	
+	/**
+	 * Get the rows of the matrix for a set of students identified by eid, eg to compare against an import.
+	 * The students are found in the roster, so any that cannot have grades in the current site are left out.
+	 * Eids are matched ignoring case as the user directory does. Course grades are not included.
+	 * 
+	 * @param studentEids
+	 * @return the {@link StudentGrades} for the students that were found, in no particular order
+	 */
+	public List<StudentGrades> getStudentGradesByEid(final Collection<String> studentEids) {
+		
+		String siteId = this.getCurrentSiteId();
+		
+		Gradebook gradebook = this.getGradebook();
+		if(gradebook == null || studentEids.isEmpty()) {
+			return Collections.emptyList();
+		}
+		
+		List<RosterEntry> roster = this.getGradeableUsers();
+		if(roster == null) {
+			return Collections.emptyList();
+		}
+		
+		Set<String> eids = new HashSet<String>();
+		for(String eid: studentEids) {
+			eids.add(StringUtils.lowerCase(StringUtils.trim(eid)));
+		}
+		List<RosterEntry> students = new ArrayList<RosterEntry>();
+		for(RosterEntry entry: roster) {
+			if(eids.contains(StringUtils.lowerCase(entry.getEid()))) {
+				students.add(entry);
+			}
+		}
+		
+		if(this.currentUserCanGradeAll(gradebook.getUid())) {
+			GradeMatrix matrix = this.getCachedGradeMatrix(siteId);
+			if(matrix != null) {
+				List<StudentGrades> rows = new ArrayList<StudentGrades>(students.size());
+				for(RosterEntry student: students) {
+					StudentGrades row = matrix.getStudentGrades(student.getId());
+					if(row != null) {
+						rows.add(row);
+					}
+				}
+				return rows;
+			}
+		}
+		
+		List<Assignment> assignments = this.getGradebookAssignments();
+		return this.loadRows(gradebook.getUid(), students, assignments, new AssignmentIndex(assignments), Collections.<String,String>emptyMap());
+	}
+	
+	/**
+	 * Check if a grade is valid for the gradebook in the current site
+	 * 
+	 * @param grade
+	 * @return
+	 */
+	public boolean isGradeValid(final String grade) {
+		Gradebook gradebook = this.getGradebook();
+		if(gradebook == null) {
+			return false;
+		}
+		RequestMetrics.count("gradebookService.isGradeValid");
+		return this.gradebookService.isGradeValid(gradebook.getUid(), grade);
+	}
+	
+	/**
+	 * Get the number of students in the matrix, without loading the matrix
+	 * 
+	 * @return number of gradeable students in the current site
+	 */
+	public int getGradeableUserCount() {
+		String siteId = this.getCurrentSiteId();
+		
+		GradeMatrix matrix = this.gradeMatrixCache.peek(siteId);
+		if(matrix != null) {
+			return matrix.getStudentCount();
+		}
+		
+		try {
+			return this.getGradeableUserIds(siteId).size();
+		} catch (IdUnusedException e) {
+			return 0;
+		}
+	}
+	
+	/**
+	 * Walk the whole matrix a chunk of students at a time, eg for an export, without holding all of the rows at once.
+	 * 
+	 * The chunks are taken from the cached matrix if there is one. Otherwise the roster, assignments and course grades are looked up once
+	 * and each chunk of students has its grades loaded only when it is reached, so the rows for a large course are never all in memory.
+	 * 
+	 * @param chunkSize number of students per chunk
+	 * @param handler receives each chunk in turn
+	 * @throws IOException if the handler fails, the remaining chunks are not loaded
+	 */
+	public void streamGradeMatrix(final int chunkSize, final StudentGradesHandler handler) throws IOException {
+		
+		String siteId = this.getCurrentSiteId();
+		
+		Gradebook gradebook = this.getGradebook();
+		if(gradebook == null) {
+			return;
+		}
+		
+		if(this.currentUserCanGradeAll(gradebook.getUid())) {
+			GradeMatrix matrix = this.getCachedGradeMatrix(siteId);
+			if(matrix != null) {
+				this.refreshCourseGrades(matrix);
+				int total = matrix.getStudentCount();
+				for(int first = 0; first < total; first += chunkSize) {
+					handler.handle(matrix.getStudentGrades(first, chunkSize));
+				}
+				return;
+			}
+		}
+		
+		long start = System.nanoTime();
+		
+		List<RosterEntry> roster = this.getGradeableUsers();
+		if(roster == null) {
+			return;
+		}
+		
+		List<Assignment> assignments = this.getGradebookAssignments();
+		AssignmentIndex assignmentIndex = new AssignmentIndex(assignments);
+		Map<String,String> courseGrades = this.getCourseGrades();
+		
+		for(int first = 0; first < roster.size(); first += chunkSize) {
+			List<RosterEntry> students = roster.subList(first, Math.min(first + chunkSize, roster.size()));
+			handler.handle(this.loadRows(gradebook.getUid(), students, assignments, assignmentIndex, courseGrades));
+		}
+		
+		RequestMetrics.time("matrix.stream", start);
+	}
+	
+	/**
+	 * Get the number of students in the matrix that match a search
+	 * 
+	 * @param search search on student name and eid, or null for all students
+	 * @return
+	 */
+	public int getGradeableUserCount(final String search) {
+		if(StringUtils.isBlank(search)) {
+			return this.getGradeableUserCount();
+		}
+		
+		String siteId = this.getCurrentSiteId();
+		
+		Gradebook gradebook = this.getGradebook();
+		if(gradebook == null) {
+			return 0;
+		}
+		
+		if(this.currentUserCanGradeAll(gradebook.getUid())) {
+			GradeMatrix matrix = this.getCachedGradeMatrix(siteId);
+			if(matrix != null) {
+				return matrix.getStudentCount(search);
+			}
+		}
+		
+		//searching only needs the names, so there is no need to load any grades
+		return this.getSortKeys(siteId, gradebook.getUid(), null).getStudentCount(search);
+	}
+	
+	/**
+	 * Assemble the matrix from the gradebook and roster
+	 * 
+	 * @param siteId
+	 * @param gradebookUid
+	 * @return
+	 */
+	private GradeMatrix loadGradeMatrix(final String siteId, final String gradebookUid) {
+		
+		long start = System.nanoTime();
+		
+		long phase = System.nanoTime();
+		List<RosterEntry> students = this.getGradeableUsers();
+		RequestMetrics.time("matrix.roster", phase);
+		
+		phase = System.nanoTime();
+		List<Assignment> assignments = this.getGradebookAssignments();
+		RequestMetrics.time("matrix.assignments", phase);
+		
+		phase = System.nanoTime();
+		Map<String,String> courseGrades = this.getCourseGrades();
+		RequestMetrics.time("matrix.courseGrades", phase);
+		
+		//NOTES:
+		//a reorder of columns can happen client side and be saved as then any refresh is going to refetch the data and it will have the new order applied
+		
+		AssignmentIndex assignmentIndex = new AssignmentIndex(assignments);
+		
+		phase = System.nanoTime();
+		List<StudentGrades> rows = this.loadRows(gradebookUid, students, assignments, assignmentIndex, courseGrades);
+		RequestMetrics.time("matrix.grades", phase);
+		
+		GradeMatrix matrix = new GradeMatrix(siteId, gradebookUid, assignments, assignmentIndex, rows);
+		RequestMetrics.time("matrix.build", start);
+		return matrix;
+	}
+	
+	/**
+	 * Load the rows of the matrix for the given students
+	 * 
+	 * @param gradebookUid
+	 * @param students		the students to load, in display order
+	 * @param assignments	the assignments to load grades for
+	 * @param assignmentIndex	index of the assignments, shared by the rows
+	 * @param courseGrades	map of course grades, keyed by uuid
+	 * @return list of {@link StudentGrades} in the same order as the students
+	 */
+	private List<StudentGrades> loadRows(final String gradebookUid, final List<RosterEntry> students, final List<Assignment> assignments, final AssignmentIndex assignmentIndex, final Map<String,String> courseGrades) {
+		
+		List<StudentGrades> rval;
+		if(this.matrixExecutor != null && students.size() > this.parallelChunkSize) {
+			rval = this.loadGradesInParallel(gradebookUid, students, assignments, assignmentIndex);
+		} else {
+			rval = this.loadGrades(gradebookUid, students, assignments, assignmentIndex);
+		}
+
+		for(StudentGrades sg: rval) {
+			sg.setCourseGrade(courseGrades.get(sg.getStudentUuid()));
+		}
+
+		return rval;
+	}
+
+	/**
+	 * Load the grades using the configured strategy
+	 * 
+	 * @param gradebookUid	uid of the gradebook
+	 * @param students		the students to load grades for, in display order
+	 * @param assignments	the assignments to load grades for
+	 * @param assignmentIndex	index of the assignments, shared by the rows
+	 * @return list of {@link StudentGrades} in the same order as the students
+	 */
+	private List<StudentGrades> loadGrades(final String gradebookUid, final List<RosterEntry> students, final List<Assignment> assignments, final AssignmentIndex assignmentIndex) {
+		if(this.bulkGradeLoading) {
+			return this.loadGradesByAssignment(gradebookUid, students, assignments, assignmentIndex);
+		} else {
+			return this.loadGradesByStudent(gradebookUid, students, assignments, assignmentIndex);
+		}
+	}
+	
+	/**
+	 * Split the students into chunks and load each chunk on the matrix thread pool, then join the results back together in roster order.
+	 * 
+	 * The gradebook service checks permissions against the current Sakai session which is held in a thread local,
+	 * so each task runs with the caller's session and clears the thread locals when it is done.
+	 * If anything goes wrong the remaining tasks are cancelled and the grades are loaded on the calling thread instead.
+	 * 
+	 * @param gradebookUid	uid of the gradebook
+	 * @param students		the students to load grades for, in display order
+	 * @param assignments	the assignments to load grades for
+	 * @param assignmentIndex	index of the assignments, shared by the rows
+	 * @return list of {@link StudentGrades} in the same order as the students
+	 */
+	private List<StudentGrades> loadGradesInParallel(final String gradebookUid, final List<RosterEntry> students, final List<Assignment> assignments, final AssignmentIndex assignmentIndex) {
+		
+		final Session session = this.sessionManager.getCurrentSession();
+		
+		List<Future<List<StudentGrades>>> futures = new ArrayList<Future<List<StudentGrades>>>();
+		for(int i = 0; i < students.size(); i += this.parallelChunkSize) {
+			final List<RosterEntry> chunk = students.subList(i, Math.min(i + this.parallelChunkSize, students.size()));
+			
+			futures.add(this.matrixExecutor.submit(new Callable<List<StudentGrades>>() {
+				@Override
+				public List<StudentGrades> call() {
+					sessionManager.setCurrentSession(session);
+					try {
+						return loadGrades(gradebookUid, chunk, assignments, assignmentIndex);
+					} finally {
+						threadLocalManager.clear();
+					}
+				}
+			}));
+		}
+		
+		List<StudentGrades> rval = new ArrayList<StudentGrades>(students.size());
+		try {
+			for(Future<List<StudentGrades>> future: futures) {
+				rval.addAll(future.get());
+			}
+			return rval;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			log.error("Interrupted while loading the grade matrix, loading serially.");
+		} catch (ExecutionException e) {
+			log.error("An error occurred loading the grade matrix in parallel, loading serially. " + e.getCause().getClass() + ": " + e.getCause().getMessage());
+		}
+		
+		for(Future<List<StudentGrades>> future: futures) {
+			future.cancel(true);
+		}
+		return this.loadGrades(gradebookUid, students, assignments, assignmentIndex);
+	}
+	
+	/**
+	 * Load the grades one cell at a time, ie one service call per student per assignment.
+	 * This is the original strategy and is retained so it can be compared against the bulk path.
+	 *
+	 * @param gradebookUid	uid of the gradebook
+	 * @param students		the students to load grades for, in display order
+	 * @param assignments	the assignments to load grades for
+	 * @param assignmentIndex	index of the assignments, shared by the rows
+	 * @return list of {@link StudentGrades} in the same order as the students
+	 */
+	private List<StudentGrades> loadGradesByStudent(final String gradebookUid, final List<RosterEntry> students, final List<Assignment> assignments, final AssignmentIndex assignmentIndex) {
+
+		List<StudentGrades> rval = new ArrayList<StudentGrades>();
+
+		for(RosterEntry student: students) {
+
+			StudentGrades sg = new StudentGrades(student, assignmentIndex);
+
+			for(Assignment assignment: assignments) {
+				RequestMetrics.count("gradebookService.getGradeDefinitionForStudentForItem");
+				GradeDefinition gradeDefinition = gradebookService.getGradeDefinitionForStudentForItem(gradebookUid, assignment.getId(), student.getId());
+				sg.addGrade(assignment.getId(), new GradeInfo(gradeDefinition));
+			}
+
+			rval.add(sg);
+		}
+
+		return rval;
+	}
+
+	/**
+	 * Load the grades one assignment at a time for the whole list of students, ie one service call per assignment.
+	 *
+	 * The gradebook service only returns definitions for students that have a grade recorded, the remaining cells are left empty
+	 * which matches what the per cell lookup returns.
+	 *
+	 * @param gradebookUid	uid of the gradebook
+	 * @param students		the students to load grades for, in display order
+	 * @param assignments	the assignments to load grades for
+	 * @param assignmentIndex	index of the assignments, shared by the rows
+	 * @return list of {@link StudentGrades} in the same order as the students
+	 */
+	private List<StudentGrades> loadGradesByAssignment(final String gradebookUid, final List<RosterEntry> students, final List<Assignment> assignments, final AssignmentIndex assignmentIndex) {
+
+		//keyed by uuid so we can slot the grades in as they come back, but still iterates in roster order
+		Map<String,StudentGrades> matrix = new LinkedHashMap<String,StudentGrades>();
+		for(RosterEntry student: students) {
+			matrix.put(student.getId(), new StudentGrades(student, assignmentIndex));
+		}
+		List<String> studentUuids = new ArrayList<String>(matrix.keySet());
+
+		for(Assignment assignment: assignments) {
+
+			RequestMetrics.count("gradebookService.getGradesForStudentsForItem");
+			List<GradeDefinition> gradeDefinitions = gradebookService.getGradesForStudentsForItem(gradebookUid, assignment.getId(), studentUuids);
+
+			for(GradeDefinition gradeDefinition: gradeDefinitions) {
+				StudentGrades sg = matrix.get(gradeDefinition.getStudentUid());
+				if(sg != null) {
+					sg.addGrade(assignment.getId(), new GradeInfo(gradeDefinition));
+				}
+			}
+		}
+
+		return new ArrayList<StudentGrades>(matrix.values());
+	}
+
+	
+	
+	/**
+	 * Get the user prefs for this gradebook instance
+	 * @return the prefs or null if the user has none
+	 */
+	public GradebookUserPreferences getUserPrefs() {
+		return this.userPreferencesStore.get(this.getCurrentUserUuid(), this.getCurrentSiteId());
+	}
+	
+	
+	/**
+	 * Helper to save user prefs. These are stored against the user, not the site.
+	 * 
+	 * @param prefs
+	 */
+	public void saveUserPrefs (GradebookUserPreferences prefs) {
+		this.userPreferencesStore.save(this.getCurrentSiteId(), prefs);
+	}
+	
+	
+	/**
+	 * Helper to get siteid
+	 * @return
+	 */
+	private String getCurrentSiteId() {
+		String siteId = RequestCache.get("siteId");
+		if(siteId == null) {
+			siteId = this.toolManager.getCurrentPlacement().getContext();
+			RequestCache.put("siteId", siteId);
+		}
+		return siteId;
+	}
+	
+	/**
+	 * Helper to get the locale of the current user, for sorting
+	 * @return
+	 */
+	private Locale getUserLocale() {
+		Locale locale = RequestCache.get("locale");
+		if(locale == null) {
+			locale = new ResourceLoader().getLocale();
+			RequestCache.put("locale", locale);
+		}
+		return locale;
+	}
+	
+	/**
+	 * Helper to get user uuid
+	 * @return
 	 */
 	public String getCurrentUserUuid() {
-		return this.userDirectoryService.getCurrentUser().getId();
+		String userUuid = RequestCache.get("userUuid");
+		if(userUuid == null) {
+			RequestMetrics.count("userDirectoryService.getCurrentUser");
+			userUuid = this.userDirectoryService.getCurrentUser().getId();
+			RequestCache.put("userUuid", userUuid);
+		}
+		return userUuid;
 	}
 	
 	
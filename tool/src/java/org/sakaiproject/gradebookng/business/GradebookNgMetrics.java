@@ -0,0 +1,204 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.Setter;
+import lombok.extern.apachecommons.CommonsLog;
+
+/**
+ * Application wide counters and histograms for the hot paths of the tool, published via JMX.
+ * 
+ * Each request's {@link RequestMetrics} is recorded here at the end of the request, and any request slower than the
+ * configured threshold is logged along with its phase timings and service calls.
+ *
+ */
+@CommonsLog
+public class GradebookNgMetrics implements GradebookNgMetricsMXBean {
+
+	private static final String OBJECT_NAME = "org.sakaiproject.gradebookng:type=Metrics";
+	
+	//milliseconds
+	private static final long[] TIME_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+	
+	//bytes
+	private static final long[] SIZE_BOUNDS = {1024, 4096, 16384, 65536, 262144, 1048576, 4194304, 16777216};
+	
+	//counts
+	private static final long[] COUNT_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 5000, 10000};
+	
+	/**
+	 * Requests that take longer than this are logged, in milliseconds. Defaults to 2 seconds. Set to 0 to disable.
+	 */
+	@Setter
+	private long slowRequestThreshold = 2000;
+	
+	/**
+	 * Publish the metrics via JMX. Defaults to true.
+	 */
+	@Setter
+	private boolean jmxEnabled = true;
+	
+	/**
+	 * The matrix cache, whose statistics are published along with the counters
+	 */
+	@Setter
+	private GradeMatrixCache gradeMatrixCache;
+	
+	private final ConcurrentMap<String,AtomicLong> counters = new ConcurrentHashMap<String,AtomicLong>();
+	private final ConcurrentMap<String,Histogram> histograms = new ConcurrentHashMap<String,Histogram>();
+	
+	
+	public void init() {
+		if(!this.jmxEnabled) {
+			return;
+		}
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if(server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+		} catch (JMException e) {
+			log.error("Could not register metrics with JMX. " + e.getClass() + ": " + e.getMessage());
+		}
+	}
+	
+	public void destroy() {
+		if(!this.jmxEnabled) {
+			return;
+		}
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if(server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			log.error("Could not unregister metrics from JMX. " + e.getClass() + ": " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Record the metrics for a completed request
+	 * 
+	 * @param metrics
+	 */
+	public void record(RequestMetrics metrics) {
+		long elapsed = metrics.getElapsed() / 1000000;
+		
+		increment("request.count");
+		time("request.total", elapsed);
+		
+		for(Map.Entry<String,Long> timing: metrics.getTimings().entrySet()) {
+			time(timing.getKey(), timing.getValue() / 1000000);
+		}
+		
+		for(Map.Entry<String,Integer> call: metrics.getServiceCalls().entrySet()) {
+			add("service." + call.getKey(), call.getValue());
+		}
+		histogram("request.serviceCalls", COUNT_BOUNDS).record(metrics.getServiceCallCount());
+		
+		if(this.slowRequestThreshold > 0 && elapsed > this.slowRequestThreshold) {
+			increment("request.slow");
+			log.warn("Slow request: " + metrics);
+		}
+	}
+	
+	/**
+	 * Record the size of a serialised page
+	 * 
+	 * @param bytes
+	 */
+	public void recordPageSize(long bytes) {
+		histogram("page.serializedSize", SIZE_BOUNDS).record(bytes);
+	}
+	
+	/**
+	 * Increment a counter
+	 * @param name
+	 */
+	public void increment(String name) {
+		add(name, 1);
+	}
+	
+	/**
+	 * Add to a counter
+	 * @param name
+	 * @param delta
+	 */
+	public void add(String name, long delta) {
+		AtomicLong counter = this.counters.get(name);
+		if(counter == null) {
+			AtomicLong created = new AtomicLong();
+			counter = this.counters.putIfAbsent(name, created);
+			if(counter == null) {
+				counter = created;
+			}
+		}
+		counter.addAndGet(delta);
+	}
+	
+	/**
+	 * Record a timing
+	 * @param name
+	 * @param millis
+	 */
+	public void time(String name, long millis) {
+		histogram(name, TIME_BOUNDS).record(millis);
+	}
+	
+	@Override
+	public Map<String,Long> getCounters() {
+		Map<String,Long> rval = new TreeMap<String,Long>();
+		for(Map.Entry<String,AtomicLong> counter: this.counters.entrySet()) {
+			rval.put(counter.getKey(), counter.getValue().get());
+		}
+		if(this.gradeMatrixCache != null) {
+			rval.put("cache.hits", this.gradeMatrixCache.getHits());
+			rval.put("cache.misses", this.gradeMatrixCache.getMisses());
+			rval.put("cache.evictions", this.gradeMatrixCache.getEvictions());
+			rval.put("cache.expirations", this.gradeMatrixCache.getExpirations());
+			rval.put("cache.size", (long) this.gradeMatrixCache.getSize());
+			rval.put("cache.cells", this.gradeMatrixCache.getCells());
+		}
+		return rval;
+	}
+	
+	@Override
+	public Map<String,String> getHistograms() {
+		Map<String,String> rval = new TreeMap<String,String>();
+		for(Map.Entry<String,Histogram> histogram: this.histograms.entrySet()) {
+			rval.put(histogram.getKey(), histogram.getValue().toString());
+		}
+		return rval;
+	}
+	
+	@Override
+	public void reset() {
+		this.counters.clear();
+		this.histograms.clear();
+	}
+	
+	private Histogram histogram(String name, long[] bounds) {
+		Histogram histogram = this.histograms.get(name);
+		if(histogram == null) {
+			Histogram created = new Histogram(bounds);
+			histogram = this.histograms.putIfAbsent(name, created);
+			if(histogram == null) {
+				histogram = created;
+			}
+		}
+		return histogram;
+	}
+	
+}
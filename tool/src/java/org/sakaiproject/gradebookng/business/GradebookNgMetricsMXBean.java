@@ -0,0 +1,26 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link GradebookNgMetrics}
+ *
+ */
+public interface GradebookNgMetricsMXBean {
+
+	/**
+	 * @return counter name to value
+	 */
+	Map<String,Long> getCounters();
+	
+	/**
+	 * @return histogram name to a summary of the histogram
+	 */
+	Map<String,String> getHistograms();
+	
+	/**
+	 * Clear all counters and histograms
+	 */
+	void reset();
+	
+}
@@ -0,0 +1,129 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.apachecommons.CommonsLog;
+
+/**
+ * Version stamps for gradebooks, so pages, caches and exports can tell cheaply whether anything changed since they last looked.
+ *
+ * Each gradebook has a counter that only ever goes up. It is bumped for every change this node knows about: grades saved here or on
+ * another node, course grade changes, assignment changes and roster changes, and whenever the matrix is rebuilt from the database,
+ * as that can pick up changes made outside of this tool. Anything built from a gradebook can be kept while the version is the same.
+ *
+ * Counters start from the current time when a gradebook is first seen, so a version handed out before a restart is not reused after it.
+ * They are per node, so a version from one node means nothing on another. Anything handed to a browser, eg an ETag, must include the
+ * {@link #getNodeId() node id} as well.
+ *
+ * Counters for gradebooks that haven't been used for the time to live are dropped. Nothing built from them outlives that, as the
+ * matrix cache has the same time to live, and a counter that is started again begins from the current time.
+ *
+ */
+@CommonsLog
+public class GradebookVersions {
+	
+	/**
+	 * Time in milliseconds after which the counter for an unused gradebook is dropped. Defaults to 5 minutes, the same as the matrix cache.
+	 */
+	@Setter
+	private long timeToLive = 300000;
+	
+	/**
+	 * Identifies this node, so versions from different nodes can't be mistaken for each other
+	 */
+	@Getter
+	private final String nodeId = UUID.randomUUID().toString();
+	
+	private final ConcurrentMap<String,Counter> versions = new ConcurrentHashMap<String,Counter>();
+	
+	private final AtomicLong nextSweep = new AtomicLong(System.currentTimeMillis());
+	
+	/**
+	 * Get the current version of a gradebook
+	 *
+	 * @param gradebookUid
+	 * @return
+	 */
+	public long getVersion(final String gradebookUid) {
+		return counter(gradebookUid).value.get();
+	}
+	
+	/**
+	 * Move a gradebook on to a new version after a change
+	 *
+	 * @param gradebookUid
+	 * @return the new version
+	 */
+	public long bump(final String gradebookUid) {
+		long version = counter(gradebookUid).value.incrementAndGet();
+		log.debug("Gradebook " + gradebookUid + " is now at version " + version);
+		return version;
+	}
+	
+	public int getSize() {
+		return this.versions.size();
+	}
+	
+	private Counter counter(final String gradebookUid) {
+		long now = System.currentTimeMillis();
+		sweep(now);
+		
+		Counter counter = this.versions.get(gradebookUid);
+		if(counter == null) {
+			Counter created = new Counter(now);
+			counter = this.versions.putIfAbsent(gradebookUid, created);
+			if(counter == null) {
+				counter = created;
+			}
+		}
+		counter.lastUsed = now;
+		return counter;
+	}
+	
+	/**
+	 * Drop the counters that haven't been used for the time to live. Runs at most once per time to live, on whichever thread gets there first.
+	 */
+	private void sweep(final long now) {
+		long due = this.nextSweep.get();
+		if(now < due || !this.nextSweep.compareAndSet(due, now + this.timeToLive)) {
+			return;
+		}
+		
+		int removed = 0;
+		Iterator<Map.Entry<String,Counter>> iter = this.versions.entrySet().iterator();
+		while(iter.hasNext()) {
+			if(now - iter.next().getValue().lastUsed > this.timeToLive) {
+				iter.remove();
+				removed++;
+			}
+		}
+		if(removed > 0) {
+			log.debug("Dropped " + removed + " unused gradebook versions");
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return "GradebookVersions [size=" + getSize() + "]";
+	}
+	
+	private static class Counter {
+		
+		private final AtomicLong value;
+		
+		private volatile long lastUsed;
+		
+		Counter(final long now) {
+			this.value = new AtomicLong(now);
+			this.lastUsed = now;
+		}
+	}
+
+}
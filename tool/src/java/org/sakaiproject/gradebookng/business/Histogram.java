@@ -0,0 +1,85 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A simple fixed bucket histogram, safe for concurrent updates
+ *
+ */
+public class Histogram {
+
+	//upper bounds, in whatever unit is recorded
+	private final long[] bounds;
+	
+	//one more than bounds, the last holds anything above the largest bound
+	private final AtomicLongArray buckets;
+	
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+	
+	/**
+	 * @param bounds upper bound of each bucket, ascending
+	 */
+	public Histogram(long[] bounds) {
+		this.bounds = bounds.clone();
+		this.buckets = new AtomicLongArray(bounds.length + 1);
+	}
+	
+	/**
+	 * Record a value
+	 * @param value
+	 */
+	public void record(long value) {
+		int bucket = 0;
+		while(bucket < this.bounds.length && value > this.bounds[bucket]) {
+			bucket++;
+		}
+		this.buckets.incrementAndGet(bucket);
+		this.count.incrementAndGet();
+		this.sum.addAndGet(value);
+		
+		long currentMax = this.max.get();
+		while(value > currentMax && !this.max.compareAndSet(currentMax, value)) {
+			currentMax = this.max.get();
+		}
+	}
+	
+	public long getCount() {
+		return this.count.get();
+	}
+	
+	public long getMax() {
+		return this.max.get();
+	}
+	
+	public long getMean() {
+		long n = this.count.get();
+		return (n > 0) ? this.sum.get() / n : 0;
+	}
+	
+	/**
+	 * Get an approximate percentile, as the upper bound of the bucket it falls in
+	 * 
+	 * @param percentile between 0 and 100
+	 * @return the upper bound of the bucket, or the max if it falls in the overflow bucket
+	 */
+	public long getPercentile(int percentile) {
+		long target = (long) Math.ceil(this.count.get() * percentile / 100.0);
+		long seen = 0;
+		for(int i = 0; i < this.bounds.length; i++) {
+			seen += this.buckets.get(i);
+			if(seen >= target && target > 0) {
+				return this.bounds[i];
+			}
+		}
+		return getMax();
+	}
+	
+	@Override
+	public String toString() {
+		return "count=" + getCount() + ", mean=" + getMean() + ", p50=" + getPercentile(50) + ", p95=" + getPercentile(95) + ", max=" + getMax();
+	}
+	
+}
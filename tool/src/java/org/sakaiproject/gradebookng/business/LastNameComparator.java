@@ -1,17 +1,37 @@
 package org.sakaiproject.gradebookng.business;
 
+import java.text.Collator;
 import java.util.Comparator;
+import java.util.Locale;
 
+import org.apache.commons.lang.StringUtils;
 import org.sakaiproject.user.api.User;
 
 /**
- * Comparator class for sorting a list of users by last name
+ * Comparator class for sorting a list of users by last name, then first name, using the collation rules of a locale.
+ * 
+ * Collators are not thread safe, so an instance should only be used by one sort at a time.
  */
 public class LastNameComparator implements Comparator<User> {
 	
+	private final Collator collator;
+	
+	public LastNameComparator() {
+		this(Locale.getDefault());
+	}
+	
+	public LastNameComparator(Locale locale) {
+		this.collator = Collator.getInstance(locale);
+		this.collator.setStrength(Collator.SECONDARY);
+	}
+	
     @Override
     public int compare(User u1, User u2) {
-    	return u1.getLastName().compareTo(u2.getLastName());
+    	int rval = this.collator.compare(StringUtils.defaultString(u1.getLastName()), StringUtils.defaultString(u2.getLastName()));
+    	if(rval == 0) {
+    		rval = this.collator.compare(StringUtils.defaultString(u1.getFirstName()), StringUtils.defaultString(u2.getFirstName()));
+    	}
+    	return rval;
 	}
    
 }
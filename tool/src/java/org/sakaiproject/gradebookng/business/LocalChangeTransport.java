@@ -0,0 +1,35 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.sakaiproject.gradebookng.business.dto.GradebookChangeEvent;
+
+/**
+ * In process {@link GradebookChangeTransport} that delivers each event straight away on the publishing thread.
+ * 
+ * For a single node, and for tests, where several {@link GradebookChanges} sharing one of these stand in for the nodes of a cluster.
+ *
+ */
+public class LocalChangeTransport implements GradebookChangeTransport {
+	
+	private final List<GradebookChangeListener> listeners = new CopyOnWriteArrayList<GradebookChangeListener>();
+	
+	@Override
+	public void publish(final GradebookChangeEvent event) {
+		for(GradebookChangeListener listener: this.listeners) {
+			listener.onChange(event);
+		}
+	}
+	
+	@Override
+	public void addListener(final GradebookChangeListener listener) {
+		this.listeners.add(listener);
+	}
+	
+	@Override
+	public void removeListener(final GradebookChangeListener listener) {
+		this.listeners.remove(listener);
+	}
+	
+}
@@ -0,0 +1,120 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.io.Serializable;
+
+import lombok.Getter;
+
+/**
+ * How to sort the rows of the grade matrix: by student using a {@link SortOrder}, by course grade, or by the grades for an assignment.
+ *
+ */
+public class MatrixSort implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	
+	private static final String COURSE_GRADE = "courseGrade";
+	private static final String ASSIGNMENT_PREFIX = "assignment:";
+
+	/**
+	 * The student sort, or null if sorting by grade
+	 */
+	@Getter
+	private final SortOrder sortOrder;
+	
+	/**
+	 * The assignment to sort by, or null if not sorting by an assignment
+	 */
+	@Getter
+	private final Long assignmentId;
+	
+	@Getter
+	private final boolean ascending;
+	
+	private MatrixSort(final SortOrder sortOrder, final Long assignmentId, final boolean ascending) {
+		this.sortOrder = sortOrder;
+		this.assignmentId = assignmentId;
+		this.ascending = ascending;
+	}
+	
+	public static MatrixSort byStudent(final SortOrder sortOrder, final boolean ascending) {
+		return new MatrixSort(sortOrder, null, ascending);
+	}
+	
+	public static MatrixSort byCourseGrade(final boolean ascending) {
+		return new MatrixSort(null, null, ascending);
+	}
+	
+	public static MatrixSort byAssignment(final Long assignmentId, final boolean ascending) {
+		return new MatrixSort(null, assignmentId, ascending);
+	}
+	
+	public boolean isByCourseGrade() {
+		return this.sortOrder == null && this.assignmentId == null;
+	}
+	
+	/**
+	 * The sort property for a column, as used by the grid
+	 * 
+	 * @param sortOrder
+	 * @return
+	 */
+	public static String property(final SortOrder sortOrder) {
+		return sortOrder.name();
+	}
+	
+	public static String courseGradeProperty() {
+		return COURSE_GRADE;
+	}
+	
+	public static String property(final Long assignmentId) {
+		return ASSIGNMENT_PREFIX + assignmentId;
+	}
+	
+	/**
+	 * Get the sort for a grid sort property
+	 * 
+	 * @param property one of the values from the property methods
+	 * @param ascending
+	 * @return the sort, or null if the property is not recognised
+	 */
+	public static MatrixSort fromProperty(final String property, final boolean ascending) {
+		if(property == null) {
+			return null;
+		}
+		if(COURSE_GRADE.equals(property)) {
+			return byCourseGrade(ascending);
+		}
+		if(property.startsWith(ASSIGNMENT_PREFIX)) {
+			try {
+				return byAssignment(Long.valueOf(property.substring(ASSIGNMENT_PREFIX.length())), ascending);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		try {
+			return byStudent(SortOrder.valueOf(property), ascending);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Key for the ordering this sort produces, ignoring direction
+	 * @return
+	 */
+	String getKey() {
+		if(this.sortOrder != null) {
+			return property(this.sortOrder);
+		}
+		if(this.assignmentId != null) {
+			return property(this.assignmentId);
+		}
+		return COURSE_GRADE;
+	}
+	
+	@Override
+	public String toString() {
+		return getKey() + (this.ascending ? " asc" : " desc");
+	}
+	
+}
@@ -0,0 +1,68 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds values for the duration of a single request, so that lookups that are repeated throughout a request
+ * (site, gradebook, assignments, current user) are only done once.
+ * 
+ * The cache is started and ended by the request cycle listener in the application. Outside of a request nothing is cached.
+ *
+ */
+public class RequestCache {
+
+	private static final ThreadLocal<Map<String,Object>> values = new ThreadLocal<Map<String,Object>>();
+	
+	/**
+	 * Start caching for the current request
+	 */
+	public static void begin() {
+		values.set(new HashMap<String,Object>());
+	}
+	
+	/**
+	 * Drop everything cached for the current request
+	 */
+	public static void end() {
+		values.remove();
+	}
+	
+	/**
+	 * Get a value cached for this request
+	 * 
+	 * @param key
+	 * @return the value or null if not cached or there is no current request
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T get(String key) {
+		Map<String,Object> map = values.get();
+		return (map != null) ? (T) map.get(key) : null;
+	}
+	
+	/**
+	 * Cache a value for this request. Does nothing if there is no current request or the value is null.
+	 * 
+	 * @param key
+	 * @param value
+	 */
+	public static void put(String key, Object value) {
+		Map<String,Object> map = values.get();
+		if(map != null && value != null) {
+			map.put(key, value);
+		}
+	}
+	
+	/**
+	 * Remove a value cached for this request
+	 * 
+	 * @param key
+	 */
+	public static void remove(String key) {
+		Map<String,Object> map = values.get();
+		if(map != null) {
+			map.remove(key);
+		}
+	}
+	
+}
@@ -0,0 +1,138 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Timings and service call counts for a single request.
+ * 
+ * Like the {@link RequestCache}, the current request's metrics are held in a thread local that is started and ended by the
+ * request cycle listener in the application, and the static helpers do nothing outside of a request.
+ *
+ */
+public class RequestMetrics {
+
+	private static final ThreadLocal<RequestMetrics> current = new ThreadLocal<RequestMetrics>();
+	
+	@Getter
+	private final long start = System.nanoTime();
+	
+	//when the request handler was resolved
+	@Getter @Setter
+	private long resolved;
+	
+	@Getter @Setter
+	private String description;
+	
+	//phase name to elapsed nanos, accumulated if a phase runs more than once
+	private final Map<String,Long> timings = new LinkedHashMap<String,Long>();
+	
+	//service call name to number of calls
+	private final Map<String,Integer> serviceCalls = new LinkedHashMap<String,Integer>();
+	
+	/**
+	 * Start collecting metrics for the current request
+	 */
+	public static void begin() {
+		current.set(new RequestMetrics());
+	}
+	
+	/**
+	 * Stop collecting metrics for the current request
+	 * 
+	 * @return the metrics collected, or null if there is no current request
+	 */
+	public static RequestMetrics end() {
+		RequestMetrics metrics = current.get();
+		current.remove();
+		return metrics;
+	}
+	
+	/**
+	 * Get the metrics for the current request
+	 * @return the metrics or null if there is no current request
+	 */
+	public static RequestMetrics get() {
+		return current.get();
+	}
+	
+	/**
+	 * Record the time taken by a phase
+	 * 
+	 * @param phase name of the phase
+	 * @param startNanos value of {@link System#nanoTime()} when the phase started
+	 */
+	public static void time(String phase, long startNanos) {
+		RequestMetrics metrics = current.get();
+		if(metrics != null) {
+			long elapsed = System.nanoTime() - startNanos;
+			Long existing = metrics.timings.get(phase);
+			metrics.timings.put(phase, (existing != null) ? existing + elapsed : elapsed);
+		}
+	}
+	
+	/**
+	 * Record a call to a Sakai service
+	 * 
+	 * @param serviceCall name of the service call
+	 */
+	public static void count(String serviceCall) {
+		RequestMetrics metrics = current.get();
+		if(metrics != null) {
+			Integer existing = metrics.serviceCalls.get(serviceCall);
+			metrics.serviceCalls.put(serviceCall, (existing != null) ? existing + 1 : 1);
+		}
+	}
+	
+	/**
+	 * Get the phase timings, in nanoseconds
+	 * @return
+	 */
+	public Map<String,Long> getTimings() {
+		return Collections.unmodifiableMap(this.timings);
+	}
+	
+	/**
+	 * Get the service call counts
+	 * @return
+	 */
+	public Map<String,Integer> getServiceCalls() {
+		return Collections.unmodifiableMap(this.serviceCalls);
+	}
+	
+	/**
+	 * Total number of service calls made in this request
+	 * @return
+	 */
+	public int getServiceCallCount() {
+		int total = 0;
+		for(Integer count: this.serviceCalls.values()) {
+			total += count;
+		}
+		return total;
+	}
+	
+	/**
+	 * Time since the request started, in nanoseconds
+	 * @return
+	 */
+	public long getElapsed() {
+		return System.nanoTime() - this.start;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(this.description).append(" took ").append(getElapsed() / 1000000).append("ms");
+		for(Map.Entry<String,Long> timing: this.timings.entrySet()) {
+			sb.append(", ").append(timing.getKey()).append("=").append(timing.getValue() / 1000000).append("ms");
+		}
+		sb.append(", service calls=").append(this.serviceCalls);
+		return sb.toString();
+	}
+	
+}
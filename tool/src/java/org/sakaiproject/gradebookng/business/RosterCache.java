@@ -0,0 +1,276 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import lombok.Setter;
+import lombok.extern.apachecommons.CommonsLog;
+
+import org.sakaiproject.exception.IdUnusedException;
+import org.sakaiproject.gradebookng.business.dto.RosterEntry;
+import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.user.api.User;
+import org.sakaiproject.user.api.UserDirectoryService;
+
+/**
+ * Per site cache of the students that can have grades, holding only the fields the gradebook shows.
+ * 
+ * Resolving the roster means asking the site for the gradeable users and then looking them all up in the user directory,
+ * which can be slow with an external provider such as LDAP. Here that happens once per site until the entry expires,
+ * rather than on every matrix build.
+ * 
+ * Membership changes are delivered by {@link GradebookChanges}. A cached roster for the site is reloaded in the background
+ * and the old one is served until the new one is ready. If the students have actually changed, the cached matrix for the site is dropped
+ * so it picks up the new roster and the gradebook is moved on to a new version. Otherwise (eg a change to an instructor) nothing is rebuilt.
+ *
+ */
+@CommonsLog
+public class RosterCache {
+	
+	//the permission that makes a user gradeable
+	private static final String GRADEABLE_PERMISSION = "gradebook.viewOwnGrades";
+	
+	@Setter
+	private SiteService siteService;
+	
+	@Setter
+	private UserDirectoryService userDirectoryService;
+	
+	/**
+	 * Optional, the cached matrix for a site is dropped when its roster is reloaded
+	 */
+	@Setter
+	private GradeMatrixCache gradeMatrixCache;
+	
+	/**
+	 * Optional, the gradebook for a site is moved on to a new version when its roster changes
+	 */
+	@Setter
+	private GradebookVersions gradebookVersions;
+	
+	/**
+	 * Time to live for an entry, in milliseconds. Defaults to 10 minutes.
+	 */
+	@Setter
+	private long timeToLive = 600000;
+	
+	/**
+	 * Maximum number of sites held. Defaults to 1000.
+	 */
+	@Setter
+	private int maxSites = 1000;
+	
+	//access ordered so iteration starts at the least recently used. Guarded by this
+	private final LinkedHashMap<String,Roster> entries = new LinkedHashMap<String,Roster>(16, 0.75f, true);
+	
+	//sites with a reload queued or running. Guarded by this
+	private final Set<String> refreshing = new HashSet<String>();
+	
+	private ExecutorService refresher;
+	
+	
+	public void init() {
+		this.refresher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "gradebookng-roster-refresher");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	public void destroy() {
+		this.refresher.shutdownNow();
+	}
+	
+	/**
+	 * Get the gradeable users in a site, loading them if they are not cached or have expired
+	 * 
+	 * @param siteId
+	 * @return the roster, unmodifiable and in the order the user directory returned it
+	 * @throws IdUnusedException if there is no such site
+	 */
+	public List<RosterEntry> getRoster(final String siteId) throws IdUnusedException {
+		synchronized(this) {
+			Roster roster = this.entries.get(siteId);
+			if(roster != null && !isExpired(roster)) {
+				return roster.entries;
+			}
+		}
+		
+		Roster roster = load(siteId);
+		if(put(siteId, roster)) {
+			rosterChanged(siteId);
+		}
+		return roster.entries;
+	}
+	
+	/**
+	 * Drop the roster for a site
+	 * 
+	 * @param siteId
+	 */
+	public synchronized void invalidate(final String siteId) {
+		this.entries.remove(siteId);
+	}
+	
+	/**
+	 * Drop everything
+	 */
+	public synchronized void clear() {
+		this.entries.clear();
+	}
+	
+	public synchronized int getSize() {
+		return this.entries.size();
+	}
+	
+	/**
+	 * Reload the roster for a site when its membership changes, if it is cached. Otherwise just drop the matrix for the site.
+	 * 
+	 * @param siteId
+	 */
+	public void membershipChanged(final String siteId) {
+		boolean cached;
+		synchronized(this) {
+			cached = this.entries.containsKey(siteId);
+			if(cached && !this.refreshing.add(siteId)) {
+				return;
+			}
+		}
+		if(cached) {
+			refresh(siteId);
+		} else {
+			rosterChanged(siteId);
+		}
+	}
+	
+	/**
+	 * Queue a reload of the roster for a site
+	 * 
+	 * @param siteId
+	 */
+	private void refresh(final String siteId) {
+		this.refresher.execute(new Runnable() {
+			@Override
+			public void run() {
+				boolean changed = true;
+				try {
+					changed = put(siteId, load(siteId));
+					log.debug("Reloaded roster for site: " + siteId + (changed ? ", students changed" : ", no change"));
+				} catch (IdUnusedException e) {
+					invalidate(siteId);
+				} catch (RuntimeException e) {
+					//the stale entry is dropped so the next request loads it
+					log.error("Error reloading roster for site " + siteId, e);
+					invalidate(siteId);
+				} finally {
+					synchronized(RosterCache.this) {
+						refreshing.remove(siteId);
+					}
+				}
+				
+				if(changed) {
+					rosterChanged(siteId);
+				}
+			}
+		});
+	}
+	
+	private Roster load(final String siteId) throws IdUnusedException {
+		long start = System.nanoTime();
+		
+		RequestMetrics.count("siteService.getSite");
+		Set<String> userIds = this.siteService.getSite(siteId).getUsersIsAllowed(GRADEABLE_PERMISSION);
+		
+		RequestMetrics.count("userDirectoryService.getUsers");
+		List<User> users = this.userDirectoryService.getUsers(userIds);
+		
+		List<RosterEntry> entries = new ArrayList<RosterEntry>(users.size());
+		for(User user: users) {
+			entries.add(new RosterEntry(user));
+		}
+		
+		RequestMetrics.time("roster.load", start);
+		return new Roster(Collections.unmodifiableList(entries));
+	}
+	
+	/**
+	 * Drop the matrix for a site and move its gradebook on to a new version, after the students have changed
+	 * 
+	 * @param siteId
+	 */
+	private void rosterChanged(final String siteId) {
+		if(this.gradeMatrixCache != null) {
+			this.gradeMatrixCache.invalidate(siteId);
+		}
+		if(this.gradebookVersions != null) {
+			//the gradebook uid is the site id
+			this.gradebookVersions.bump(siteId);
+		}
+	}
+	
+	/**
+	 * Cache a roster
+	 * 
+	 * @param siteId
+	 * @param roster
+	 * @return true if it replaced a roster with different students
+	 */
+	private synchronized boolean put(final String siteId, final Roster roster) {
+		Roster previous = this.entries.put(siteId, roster);
+		
+		Iterator<String> iter = this.entries.keySet().iterator();
+		while(this.entries.size() > this.maxSites && iter.hasNext()) {
+			iter.next();
+			iter.remove();
+		}
+		
+		return previous != null && !sameStudents(previous.entries, roster.entries);
+	}
+	
+	private static boolean sameStudents(final List<RosterEntry> a, final List<RosterEntry> b) {
+		if(a.size() != b.size()) {
+			return false;
+		}
+		for(int i = 0; i < a.size(); i++) {
+			if(!a.get(i).getId().equals(b.get(i).getId())) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private boolean isExpired(final Roster roster) {
+		return System.currentTimeMillis() - roster.loaded > this.timeToLive;
+	}
+	
+	@Override
+	public String toString() {
+		return "RosterCache [size=" + getSize() + "]";
+	}
+	
+	
+	/**
+	 * A roster and when it was loaded
+	 */
+	private static class Roster {
+		private final List<RosterEntry> entries;
+		private final long loaded = System.currentTimeMillis();
+		
+		Roster(List<RosterEntry> entries) {
+			this.entries = entries;
+		}
+	}
+	
+}
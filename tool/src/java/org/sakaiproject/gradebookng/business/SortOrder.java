@@ -25,4 +25,19 @@ public enum SortOrder {
 	public SortOrder getDefault() {
 		return SortOrder.LAST_NAME;
 	}
+	
+	/**
+	 * Get the sort order for a stored value
+	 * 
+	 * @param value
+	 * @return the matching sort order, or the default if there is none
+	 */
+	public static SortOrder fromValue(int value) {
+		for(SortOrder sortOrder: values()) {
+			if(sortOrder.sort == value) {
+				return sortOrder;
+			}
+		}
+		return SortOrder.LAST_NAME;
+	}
 }
@@ -0,0 +1,22 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.sakaiproject.gradebookng.tool.model.StudentGrades;
+
+/**
+ * Receives the rows of the grade matrix a chunk at a time, see {@link GradebookNgBusinessService#streamGradeMatrix(int, StudentGradesHandler)}
+ *
+ */
+public interface StudentGradesHandler {
+
+	/**
+	 * Handle the next chunk of rows. The rows are not retained once this returns.
+	 * 
+	 * @param rows
+	 * @throws IOException to abandon the rest of the matrix
+	 */
+	void handle(List<StudentGrades> rows) throws IOException;
+	
+}
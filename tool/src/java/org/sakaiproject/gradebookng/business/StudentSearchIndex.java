@@ -0,0 +1,145 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+import org.sakaiproject.gradebookng.tool.model.StudentGrades;
+
+/**
+ * Search index over the students in a {@link GradeMatrix}, by name and eid.
+ * 
+ * Every word of the student's names and eid, and the whole eid, is held in one sorted array, so finding the words
+ * that start with a search term is a binary search. Matching ignores case and accents. The index refers to rows by position,
+ * which never changes for the life of a matrix, so grade updates do not affect it.
+ *
+ */
+class StudentSearchIndex {
+
+	private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+	private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+	
+	//sorted words and the row each came from
+	private final String[] words;
+	private final int[] rows;
+	
+	private final int size;
+	
+	StudentSearchIndex(final List<StudentGrades> students) {
+		this.size = students.size();
+		
+		List<Entry> entries = new ArrayList<Entry>(students.size() * 4);
+		for(int i = 0; i < students.size(); i++) {
+			StudentGrades student = students.get(i);
+			Set<String> studentWords = new LinkedHashSet<String>();
+			addWords(studentWords, student.getStudentName());
+			addWords(studentWords, student.getStudentFirstName());
+			addWords(studentWords, student.getStudentLastName());
+			addWords(studentWords, student.getStudentEid());
+			if(student.getStudentEid() != null) {
+				studentWords.add(normalise(student.getStudentEid()));
+			}
+			for(String word: studentWords) {
+				entries.add(new Entry(word, i));
+			}
+		}
+		
+		Entry[] sorted = entries.toArray(new Entry[entries.size()]);
+		Arrays.sort(sorted);
+		
+		this.words = new String[sorted.length];
+		this.rows = new int[sorted.length];
+		for(int i = 0; i < sorted.length; i++) {
+			this.words[i] = sorted[i].word;
+			this.rows[i] = sorted[i].row;
+		}
+	}
+	
+	/**
+	 * Find the rows that match a search. Each term in the search must be the start of one of the words for the student.
+	 * 
+	 * @param query
+	 * @return the positions of the matching rows, or null if the query has no terms and everything matches
+	 */
+	BitSet search(final String query) {
+		String[] terms = SEPARATORS.split(normalise(query));
+		
+		BitSet matches = null;
+		for(String term: terms) {
+			if(term.isEmpty()) {
+				continue;
+			}
+			BitSet termMatches = new BitSet(this.size);
+			for(int i = firstAtOrAfter(term); i < this.words.length && this.words[i].startsWith(term); i++) {
+				termMatches.set(this.rows[i]);
+			}
+			if(matches == null) {
+				matches = termMatches;
+			} else {
+				matches.and(termMatches);
+			}
+		}
+		return matches;
+	}
+	
+	/**
+	 * Binary search for the first word that is not before the term. The same word appears once per student that has it,
+	 * so this has to find the first of them.
+	 */
+	private int firstAtOrAfter(final String term) {
+		int low = 0;
+		int high = this.words.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(this.words[mid].compareTo(term) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+	
+	private static void addWords(final Set<String> words, final String value) {
+		if(StringUtils.isBlank(value)) {
+			return;
+		}
+		for(String word: SEPARATORS.split(normalise(value))) {
+			if(!word.isEmpty()) {
+				words.add(word);
+			}
+		}
+	}
+	
+	/**
+	 * Lower case and strip accents, so that eg Émile matches emile
+	 */
+	private static String normalise(final String value) {
+		String decomposed = Normalizer.normalize(value.trim(), Normalizer.Form.NFD);
+		return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+	}
+	
+	
+	private static class Entry implements Comparable<Entry> {
+		private final String word;
+		private final int row;
+		
+		Entry(String word, int row) {
+			this.word = word;
+			this.row = row;
+		}
+		
+		@Override
+		public int compareTo(Entry other) {
+			return this.word.compareTo(other.word);
+		}
+	}
+	
+}
@@ -0,0 +1,118 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+
+import javax.xml.bind.JAXBException;
+
+import lombok.extern.apachecommons.CommonsLog;
+
+import org.apache.commons.lang.StringUtils;
+import org.sakaiproject.gradebookng.business.dto.GradebookUserPreferences;
+
+/**
+ * Converts {@link GradebookUserPreferences} to and from the compact string form that is stored.
+ * 
+ * The format is a version marker followed by url encoded key value pairs, eg <code>v1&userUuid=abc&siteId=xyz&sortOrder=1</code>.
+ * Preferences that were stored as XML are still read via the {@link XmlMarshaller}, and will be written in the compact form next time they are saved.
+ * 
+ * This holds no state so is safe to use from any thread.
+ *
+ */
+@CommonsLog
+public class UserPreferencesCodec {
+
+	private static final String VERSION = "v1";
+	private static final String ENCODING = "UTF-8";
+	
+	private static final String USER_UUID = "userUuid";
+	private static final String SITE_ID = "siteId";
+	private static final String SORT_ORDER = "sortOrder";
+	
+	/**
+	 * Convert the preferences to a string for storage
+	 * 
+	 * @param prefs
+	 * @return
+	 */
+	public static String encode(GradebookUserPreferences prefs) {
+		StringBuilder sb = new StringBuilder(VERSION);
+		append(sb, USER_UUID, prefs.getUserUuid());
+		append(sb, SITE_ID, prefs.getSiteId());
+		append(sb, SORT_ORDER, String.valueOf(prefs.getSortOrder()));
+		return sb.toString();
+	}
+	
+	/**
+	 * Convert a stored string back into preferences. Handles both the compact form and the original XML form.
+	 * 
+	 * @param value
+	 * @return the preferences or null if the value is empty or cannot be read
+	 */
+	public static GradebookUserPreferences decode(String value) {
+		if(StringUtils.isBlank(value)) {
+			return null;
+		}
+		
+		//legacy format
+		if(value.startsWith("<")) {
+			try {
+				return (GradebookUserPreferences) XmlMarshaller.unmarshall(value);
+			} catch (JAXBException e) {
+				log.error("Could not read preferences from XML. " + e.getClass() + ": " + e.getMessage());
+				return null;
+			}
+		}
+		
+		String[] pairs = StringUtils.split(value, '&');
+		if(pairs.length == 0 || !VERSION.equals(pairs[0])) {
+			log.error("Unknown preferences format: " + value);
+			return null;
+		}
+		
+		GradebookUserPreferences prefs = new GradebookUserPreferences(null);
+		try {
+			for(int i = 1; i < pairs.length; i++) {
+				String key = StringUtils.substringBefore(pairs[i], "=");
+				String val = decodeValue(StringUtils.substringAfter(pairs[i], "="));
+				
+				if(USER_UUID.equals(key)) {
+					prefs.setUserUuid(val);
+				} else if(SITE_ID.equals(key)) {
+					prefs.setSiteId(val);
+				} else if(SORT_ORDER.equals(key)) {
+					prefs.setSortOrder(Integer.parseInt(val));
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			//a bad number or escape sequence
+			log.error("Could not read preferences: " + value + ". " + e.getClass() + ": " + e.getMessage());
+			return null;
+		}
+		return prefs;
+	}
+	
+	private static void append(StringBuilder sb, String key, String value) {
+		if(value == null) {
+			return;
+		}
+		sb.append('&').append(key).append('=');
+		try {
+			sb.append(URLEncoder.encode(value, ENCODING));
+		} catch (UnsupportedEncodingException e) {
+			//UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private static String decodeValue(String value) {
+		try {
+			return URLDecoder.decode(value, ENCODING);
+		} catch (UnsupportedEncodingException e) {
+			//UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+	}
+	
+}
@@ -0,0 +1,280 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import lombok.Setter;
+import lombok.extern.apachecommons.CommonsLog;
+
+import org.sakaiproject.authz.api.SecurityAdvisor;
+import org.sakaiproject.authz.api.SecurityService;
+import org.sakaiproject.entity.api.ResourceProperties;
+import org.sakaiproject.entity.api.ResourcePropertiesEdit;
+import org.sakaiproject.exception.IdUnusedException;
+import org.sakaiproject.exception.IdUsedException;
+import org.sakaiproject.exception.InUseException;
+import org.sakaiproject.exception.PermissionException;
+import org.sakaiproject.gradebookng.business.dto.GradebookUserPreferences;
+import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.user.api.PreferencesEdit;
+import org.sakaiproject.user.api.PreferencesService;
+
+/**
+ * Stores {@link GradebookUserPreferences} against the user in the Sakai preferences service, keyed by site,
+ * so that saving a preference never touches the site record.
+ * 
+ * Reads are cached, including the absence of preferences as that is the case for most users. Cached reads expire after a time to live,
+ * so a change saved on another node is picked up. Writes update the cache immediately and are written out after a short delay,
+ * so a burst of changes by one user results in a single write.
+ * 
+ * Preferences previously stored as site properties are still read if there is nothing in the preferences service,
+ * and are moved across the next time they are saved.
+ *
+ */
+@CommonsLog
+public class UserPreferencesStore {
+
+	//the key the properties are stored under in the user's preferences
+	private static final String PREFS_KEY = "sakai:gradebookng";
+	
+	//cached for users that have no preferences, so they are not looked up again. Compared by identity and never handed out
+	private static final GradebookUserPreferences NO_PREFERENCES = new GradebookUserPreferences(null);
+	
+	@Setter
+	private PreferencesService preferencesService;
+	
+	@Setter
+	private SecurityService securityService;
+	
+	@Setter
+	private SiteService siteService;
+	
+	/**
+	 * Time to wait before writing a change, in milliseconds, so that further changes can be coalesced. Defaults to 5 seconds.
+	 */
+	@Setter
+	private long writeDelay = 5000;
+	
+	/**
+	 * Maximum number of preferences held in the read cache. Defaults to 10,000.
+	 */
+	@Setter
+	private int maxCacheSize = 10000;
+	
+	/**
+	 * Time to live for a cached read, in milliseconds. Defaults to 5 minutes.
+	 */
+	@Setter
+	private long timeToLive = 300000;
+	
+	private Map<Key,Cached> cache;
+	
+	//writes that are waiting to be flushed. A key is only scheduled once, later changes replace the value
+	private final ConcurrentMap<Key,GradebookUserPreferences> pending = new ConcurrentHashMap<Key,GradebookUserPreferences>();
+	
+	private ScheduledExecutorService writer;
+	
+	//the flush runs in the background without the user's session, so allow it to edit preferences
+	private final SecurityAdvisor preferencesAdvisor = new SecurityAdvisor() {
+		@Override
+		public SecurityAdvice isAllowed(String userId, String function, String reference) {
+			if(PreferencesService.SECURE_ADD_PREFS.equals(function) || PreferencesService.SECURE_EDIT_PREFS.equals(function)) {
+				return SecurityAdvice.ALLOWED;
+			}
+			return SecurityAdvice.PASS;
+		}
+	};
+	
+	
+	public void init() {
+		this.cache = Collections.synchronizedMap(new LinkedHashMap<Key,Cached>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key,Cached> eldest) {
+				return size() > maxCacheSize;
+			}
+		});
+		
+		this.writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "gradebookng-prefs-writer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	/**
+	 * Stop the writer and write out anything that is still pending
+	 */
+	public void destroy() {
+		this.writer.shutdownNow();
+		for(Key key: this.pending.keySet()) {
+			flush(key);
+		}
+	}
+	
+	/**
+	 * Get the preferences for a user in a site
+	 * 
+	 * @param userUuid
+	 * @param siteId
+	 * @return the preferences or null if the user has none
+	 */
+	public GradebookUserPreferences get(final String userUuid, final String siteId) {
+		Key key = new Key(userUuid, siteId);
+		
+		Cached cached = this.cache.get(key);
+		if(cached != null && System.currentTimeMillis() - cached.loaded <= this.timeToLive) {
+			return (cached.prefs != NO_PREFERENCES) ? cached.prefs : null;
+		}
+		
+		//not written yet, so newer than anything in the preferences service
+		GradebookUserPreferences prefs = this.pending.get(key);
+		if(prefs != null) {
+			this.cache.put(key, new Cached(prefs));
+			return prefs;
+		}
+		
+		ResourceProperties props = this.preferencesService.getPreferences(userUuid).getProperties(PREFS_KEY);
+		prefs = UserPreferencesCodec.decode(props.getProperty(siteId));
+		
+		if(prefs == null) {
+			prefs = getLegacyPrefs(userUuid, siteId);
+		}
+		
+		this.cache.put(key, new Cached((prefs != null) ? prefs : NO_PREFERENCES));
+		return prefs;
+	}
+	
+	/**
+	 * Save the preferences for a user in a site. The cache is updated immediately, the write happens later.
+	 * 
+	 * @param siteId
+	 * @param prefs
+	 */
+	public void save(final String siteId, final GradebookUserPreferences prefs) {
+		final Key key = new Key(prefs.getUserUuid(), siteId);
+		
+		//replaces any cached absence of preferences
+		this.cache.put(key, new Cached(prefs));
+		
+		if(this.pending.put(key, prefs) == null) {
+			this.writer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					flush(key);
+				}
+			}, this.writeDelay, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Write out the pending preferences for a key. If the preferences are locked by another edit, try again later.
+	 * 
+	 * @param key
+	 */
+	private void flush(final Key key) {
+		GradebookUserPreferences prefs = this.pending.remove(key);
+		if(prefs == null) {
+			return;
+		}
+		
+		this.securityService.pushAdvisor(this.preferencesAdvisor);
+		try {
+			PreferencesEdit edit;
+			try {
+				edit = this.preferencesService.edit(key.userUuid);
+			} catch (IdUnusedException e) {
+				edit = this.preferencesService.add(key.userUuid);
+			}
+			
+			ResourcePropertiesEdit props = edit.getPropertiesEdit(PREFS_KEY);
+			props.addProperty(key.siteId, UserPreferencesCodec.encode(prefs));
+			this.preferencesService.commit(edit);
+			
+		} catch (InUseException e) {
+			log.debug("Preferences for " + key.userUuid + " are locked, will retry.");
+			//if newer preferences were saved in the meantime they are already scheduled, and replace these
+			if(this.pending.putIfAbsent(key, prefs) == null && !this.writer.isShutdown()) {
+				this.writer.schedule(new Runnable() {
+					@Override
+					public void run() {
+						flush(key);
+					}
+				}, this.writeDelay, TimeUnit.MILLISECONDS);
+			}
+		} catch (PermissionException | IdUsedException e) {
+			log.error("Could not save preferences for " + key.userUuid + ". " + e.getClass() + ": " + e.getMessage());
+		} finally {
+			this.securityService.popAdvisor(this.preferencesAdvisor);
+		}
+	}
+	
+	/**
+	 * Read preferences that were stored against the site
+	 * 
+	 * @param userUuid
+	 * @param siteId
+	 * @return
+	 */
+	private GradebookUserPreferences getLegacyPrefs(final String userUuid, final String siteId) {
+		try {
+			ResourceProperties props = this.siteService.getSite(siteId).getProperties();
+			return UserPreferencesCodec.decode(props.getProperty(GradebookUserPreferences.getPropKey(userUuid)));
+		} catch (IdUnusedException e) {
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * A cached read and when it was loaded
+	 */
+	private static class Cached {
+		private final GradebookUserPreferences prefs;
+		private final long loaded;
+		
+		Cached(GradebookUserPreferences prefs) {
+			this.prefs = prefs;
+			this.loaded = System.currentTimeMillis();
+		}
+	}
+	
+	/**
+	 * Cache key
+	 */
+	private static class Key {
+		private final String userUuid;
+		private final String siteId;
+		
+		Key(String userUuid, String siteId) {
+			this.userUuid = userUuid;
+			this.siteId = siteId;
+		}
+		
+		@Override
+		public int hashCode() {
+			return 31 * this.userUuid.hashCode() + this.siteId.hashCode();
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return this.userUuid.equals(other.userUuid) && this.siteId.equals(other.siteId);
+		}
+	}
+	
+}
@@ -13,28 +13,48 @@ import org.sakaiproject.gradebookng.business.dto.GradebookUserPreferences;
 /**
  * Handles conversion to and from XML
  * 
+ * The JAXBContext is thread safe but marshallers and unmarshallers are not, so each thread gets its own.
+ * 
  * @author Steve Swinsburg (steve.swinsburg@gmail.com)
  * 
  */
 public class XmlMarshaller {
 
-	private static Marshaller marshaller = null;
-    private static Unmarshaller unmarshaller = null;
+	private static final JAXBContext context;
 
     static {
         try {
         	//ensure the full set of classes are added to this list
-            JAXBContext context = JAXBContext.newInstance(GradebookUserPreferences.class);
-            marshaller = context.createMarshaller();
-            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
-            marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
-
-            unmarshaller = context.createUnmarshaller();
+            context = JAXBContext.newInstance(GradebookUserPreferences.class);
         } catch (JAXBException e) {
             throw new RuntimeException("Couldn't create JAXB context", e);
         }
     }
+    
+    private static final ThreadLocal<Marshaller> marshaller = new ThreadLocal<Marshaller>() {
+    	@Override
+    	protected Marshaller initialValue() {
+    		try {
+    			Marshaller m = context.createMarshaller();
+    			m.setProperty(Marshaller.JAXB_FRAGMENT, true);
+    			m.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+    			return m;
+    		} catch (JAXBException e) {
+    			throw new RuntimeException("Couldn't create JAXB marshaller", e);
+    		}
+    	}
+    };
+    
+    private static final ThreadLocal<Unmarshaller> unmarshaller = new ThreadLocal<Unmarshaller>() {
+    	@Override
+    	protected Unmarshaller initialValue() {
+    		try {
+    			return context.createUnmarshaller();
+    		} catch (JAXBException e) {
+    			throw new RuntimeException("Couldn't create JAXB unmarshaller", e);
+    		}
+    	}
+    };
 
 	/**
 	 * Convert an object to an xml string
@@ -45,7 +65,7 @@ public class XmlMarshaller {
 	 */
     public static String marshal(Object object) throws JAXBException {
 		final StringWriter writer = new StringWriter();
-		marshaller.marshal(object, writer);		
+		marshaller.get().marshal(object, writer);		
 		return writer.toString();
     }
 
@@ -56,7 +76,7 @@ public class XmlMarshaller {
 	 * @throws JAXBException
 	 */
 	public static <T> Object unmarshall(String xml) throws JAXBException {
-		return unmarshaller.unmarshal(new StringReader(xml));
+		return unmarshaller.get().unmarshal(new StringReader(xml));
 	}
 
 }
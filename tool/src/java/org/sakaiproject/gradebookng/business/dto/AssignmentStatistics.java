@@ -0,0 +1,71 @@
+package org.sakaiproject.gradebookng.business.dto;
+
+import java.io.Serializable;
+
+import lombok.Getter;
+
+/**
+ * Statistics for the grades in an assignment column, as a snapshot. Only numeric grades are counted.
+ *
+ */
+public class AssignmentStatistics implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Number of students with a numeric grade
+	 */
+	@Getter
+	private final int count;
+	
+	/**
+	 * Mean of the grades, or null if there are none
+	 */
+	@Getter
+	private final Double mean;
+	
+	/**
+	 * Median of the grades, or null if there are none
+	 */
+	@Getter
+	private final Double median;
+	
+	/**
+	 * Lowest grade, or null if there are none
+	 */
+	@Getter
+	private final Double min;
+	
+	/**
+	 * Highest grade, or null if there are none
+	 */
+	@Getter
+	private final Double max;
+	
+	private final int[] histogram;
+	
+	public AssignmentStatistics(final int count, final Double mean, final Double median, final Double min, final Double max, final int[] histogram) {
+		this.count = count;
+		this.mean = mean;
+		this.median = median;
+		this.min = min;
+		this.max = max;
+		this.histogram = histogram.clone();
+	}
+	
+	/**
+	 * Number of grades in each tenth of the points possible, lowest first. Grades above the points possible are counted in the top bucket.
+	 * Empty if the assignment has no points possible.
+	 * 
+	 * @return
+	 */
+	public int[] getHistogram() {
+		return this.histogram.clone();
+	}
+	
+	@Override
+	public String toString() {
+		return "AssignmentStatistics[count=" + this.count + ", mean=" + this.mean + ", median=" + this.median + ", min=" + this.min + ", max=" + this.max + "]";
+	}
+	
+}
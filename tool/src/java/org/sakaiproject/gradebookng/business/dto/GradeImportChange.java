@@ -0,0 +1,38 @@
+package org.sakaiproject.gradebookng.business.dto;
+
+import java.io.Serializable;
+
+import lombok.Getter;
+
+/**
+ * A cell in an import whose grade differs from the one in the gradebook
+ *
+ */
+public class GradeImportChange implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Getter
+	private final String studentEid;
+	
+	@Getter
+	private final String studentName;
+	
+	@Getter
+	private final String assignmentName;
+	
+	@Getter
+	private final String currentGrade;
+	
+	@Getter
+	private final String newGrade;
+	
+	public GradeImportChange(final String studentEid, final String studentName, final String assignmentName, final String currentGrade, final String newGrade) {
+		this.studentEid = studentEid;
+		this.studentName = studentName;
+		this.assignmentName = assignmentName;
+		this.currentGrade = currentGrade;
+		this.newGrade = newGrade;
+	}
+	
+}
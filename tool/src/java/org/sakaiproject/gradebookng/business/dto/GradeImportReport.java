@@ -0,0 +1,152 @@
+package org.sakaiproject.gradebookng.business.dto;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * Summary of a grade import, either a preview of what would change or the outcome of committing it.
+ * 
+ * Only counts are kept for the whole file. The individual changes, invalid grades and unknown students are sampled
+ * so that the report stays small however large the file is.
+ *
+ */
+public class GradeImportReport implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int maxSamples;
+	
+	/**
+	 * Number of rows for students that were found
+	 */
+	@Getter
+	private int rows;
+	
+	/**
+	 * Number of cells that differ from the gradebook
+	 */
+	@Getter
+	private int changed;
+	
+	/**
+	 * Number of cells that are the same as the gradebook
+	 */
+	@Getter
+	private int unchanged;
+	
+	/**
+	 * Number of cells with a grade that is not valid for the gradebook
+	 */
+	@Getter
+	private int invalid;
+	
+	/**
+	 * Number of rows for students that could not be found or cannot be graded in the site
+	 */
+	@Getter
+	private int unknownStudents;
+	
+	/**
+	 * Number of cells saved, only set when the import is committed
+	 */
+	@Getter
+	private int saved;
+	
+	/**
+	 * Number of cells that failed to save, only set when the import is committed
+	 */
+	@Getter
+	private int failed;
+	
+	private final List<String> matchedColumns = new ArrayList<String>();
+	private final List<String> ignoredColumns = new ArrayList<String>();
+	private final List<GradeImportChange> sampleChanges = new ArrayList<GradeImportChange>();
+	private final List<GradeImportChange> sampleInvalid = new ArrayList<GradeImportChange>();
+	private final List<String> sampleUnknownStudents = new ArrayList<String>();
+	
+	/**
+	 * @param maxSamples the number of each kind of sample to keep
+	 */
+	public GradeImportReport(final int maxSamples) {
+		this.maxSamples = maxSamples;
+	}
+	
+	public void addMatchedColumn(final String header) {
+		this.matchedColumns.add(header);
+	}
+	
+	public void addIgnoredColumn(final String header) {
+		this.ignoredColumns.add(header);
+	}
+	
+	public void addRow() {
+		this.rows++;
+	}
+	
+	public void addUnchanged() {
+		this.unchanged++;
+	}
+	
+	public void addChange(final GradeImportChange change) {
+		this.changed++;
+		if(this.sampleChanges.size() < this.maxSamples) {
+			this.sampleChanges.add(change);
+		}
+	}
+	
+	public void addInvalid(final GradeImportChange change) {
+		this.invalid++;
+		if(this.sampleInvalid.size() < this.maxSamples) {
+			this.sampleInvalid.add(change);
+		}
+	}
+	
+	public void addUnknownStudent(final String studentEid) {
+		this.unknownStudents++;
+		if(this.sampleUnknownStudents.size() < this.maxSamples) {
+			this.sampleUnknownStudents.add(studentEid);
+		}
+	}
+	
+	public void addSaveResult(final GradeSaveResult result) {
+		this.saved += result.getSaved().size();
+		this.failed += result.getFailed().size();
+	}
+	
+	/**
+	 * @return the column headers that were matched to gradebook items
+	 */
+	public List<String> getMatchedColumns() {
+		return Collections.unmodifiableList(this.matchedColumns);
+	}
+	
+	/**
+	 * @return the column headers that did not match a gradebook item and were skipped
+	 */
+	public List<String> getIgnoredColumns() {
+		return Collections.unmodifiableList(this.ignoredColumns);
+	}
+	
+	public List<GradeImportChange> getSampleChanges() {
+		return Collections.unmodifiableList(this.sampleChanges);
+	}
+	
+	public List<GradeImportChange> getSampleInvalid() {
+		return Collections.unmodifiableList(this.sampleInvalid);
+	}
+	
+	public List<String> getSampleUnknownStudents() {
+		return Collections.unmodifiableList(this.sampleUnknownStudents);
+	}
+	
+	@Override
+	public String toString() {
+		return "GradeImportReport[rows=" + this.rows + ", changed=" + this.changed + ", unchanged=" + this.unchanged + ", invalid=" + this.invalid
+				+ ", unknownStudents=" + this.unknownStudents + ", saved=" + this.saved + ", failed=" + this.failed + "]";
+	}
+	
+}
@@ -0,0 +1,69 @@
+package org.sakaiproject.gradebookng.business.dto;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of saving a batch of grades. Every update in the batch ends up either saved or failed, with the reason.
+ *
+ */
+public class GradeSaveResult implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Why a cell was not saved
+	 */
+	public enum Failure {
+		/** the assignment does not exist in this gradebook */
+		UNKNOWN_ASSIGNMENT,
+		/** the student cannot have grades in this site */
+		UNKNOWN_STUDENT,
+		/** the grade is not valid for the grade entry type of this gradebook */
+		INVALID_GRADE,
+		/** the gradebook service rejected the save */
+		ERROR
+	}
+	
+	private final List<GradeUpdate> saved = new ArrayList<GradeUpdate>();
+	private final Map<GradeUpdate, Failure> failed = new LinkedHashMap<GradeUpdate, Failure>();
+	
+	public void addSaved(final GradeUpdate update) {
+		this.saved.add(update);
+	}
+	
+	public void addFailed(final GradeUpdate update, final Failure failure) {
+		this.failed.put(update, failure);
+	}
+	
+	/**
+	 * @return the updates that were persisted, in the order they were given
+	 */
+	public List<GradeUpdate> getSaved() {
+		return Collections.unmodifiableList(this.saved);
+	}
+	
+	/**
+	 * @return the updates that were not persisted, with the reason for each
+	 */
+	public Map<GradeUpdate, Failure> getFailed() {
+		return Collections.unmodifiableMap(this.failed);
+	}
+	
+	/**
+	 * @return true if every update in the batch was saved
+	 */
+	public boolean isSuccess() {
+		return this.failed.isEmpty();
+	}
+	
+	@Override
+	public String toString() {
+		return "GradeSaveResult[saved=" + this.saved.size() + ", failed=" + this.failed.size() + "]";
+	}
+	
+}
@@ -0,0 +1,48 @@
+package org.sakaiproject.gradebookng.business.dto;
+
+import java.io.Serializable;
+
+import lombok.Getter;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.commons.lang.builder.ToStringStyle;
+
+/**
+ * A single grade cell to be saved, as part of a batch
+ *
+ */
+public class GradeUpdate implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	@Getter
+	private final Long assignmentId;
+	
+	@Getter
+	private final String studentUuid;
+	
+	@Getter
+	private final String grade;
+	
+	@Getter
+	private final String comment;
+	
+	/**
+	 * @param assignmentId	id of the gradebook assignment
+	 * @param studentUuid	uuid of the user
+	 * @param grade			grade for the user, blank to clear it
+	 * @param comment		optional comment for the grade
+	 */
+	public GradeUpdate(final Long assignmentId, final String studentUuid, final String grade, final String comment) {
+		this.assignmentId = assignmentId;
+		this.studentUuid = studentUuid;
+		this.grade = grade;
+		this.comment = comment;
+	}
+	
+	@Override
+	public String toString() {
+		return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+	}
+	
+}
@@ -0,0 +1,46 @@
+package org.sakaiproject.gradebookng.business.dto;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * Snapshot of the grade edits for a site that have been accepted but are not yet known to be stored.
+ *
+ */
+public class GradeWriteStatus implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Number of edits waiting to be written or being written
+	 */
+	@Getter
+	private final int pending;
+	
+	/**
+	 * Edits that could not be written and have been given up on, with the reason for each
+	 */
+	@Getter
+	private final Map<GradeUpdate, GradeSaveResult.Failure> failed;
+	
+	public GradeWriteStatus(final int pending, final Map<GradeUpdate, GradeSaveResult.Failure> failed) {
+		this.pending = pending;
+		this.failed = Collections.unmodifiableMap(failed);
+	}
+	
+	/**
+	 * @return true if every accepted edit has been stored
+	 */
+	public boolean isDurable() {
+		return this.pending == 0 && this.failed.isEmpty();
+	}
+	
+	@Override
+	public String toString() {
+		return "GradeWriteStatus[pending=" + this.pending + ", failed=" + this.failed.size() + "]";
+	}
+	
+}
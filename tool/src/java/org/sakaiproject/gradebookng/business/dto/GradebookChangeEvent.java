@@ -0,0 +1,85 @@
+package org.sakaiproject.gradebookng.business.dto;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import lombok.Getter;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.commons.lang.builder.ToStringStyle;
+
+/**
+ * A change to a gradebook that makes cached copies of it stale, as sent between nodes
+ *
+ */
+public class GradebookChangeEvent implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	public enum Type {
+		/**
+		 * Grades changed, and so the course grades for the students
+		 */
+		GRADE,
+		/**
+		 * A course grade changed without any grade changing, eg an override
+		 */
+		COURSE_GRADE,
+		/**
+		 * An assignment was added, removed or changed
+		 */
+		ASSIGNMENT,
+		/**
+		 * The students in the site changed. The gradebook uid is the site id.
+		 */
+		ROSTER
+	}
+	
+	@Getter
+	private final Type type;
+	
+	/**
+	 * The node that made the change, or null if it is not known (eg a Sakai membership event)
+	 */
+	@Getter
+	private final String origin;
+	
+	@Getter
+	private final String gradebookUid;
+	
+	/**
+	 * The students affected, or empty if the change affects the whole gradebook
+	 */
+	@Getter
+	private final List<String> studentUuids;
+	
+	/**
+	 * @param type
+	 * @param origin
+	 * @param gradebookUid
+	 * @param studentUuids the students affected, or null or empty for the whole gradebook
+	 */
+	public GradebookChangeEvent(final Type type, final String origin, final String gradebookUid, final Collection<String> studentUuids) {
+		this.type = type;
+		this.origin = origin;
+		this.gradebookUid = gradebookUid;
+		this.studentUuids = (studentUuids != null) ? Collections.unmodifiableList(new ArrayList<String>(studentUuids)) : Collections.<String>emptyList();
+	}
+	
+	/**
+	 * Does this change affect the whole gradebook rather than particular students
+	 * @return
+	 */
+	public boolean isGradebookWide() {
+		return this.studentUuids.isEmpty();
+	}
+	
+	@Override
+	public String toString() {
+		return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+	}
+	
+}
@@ -0,0 +1,51 @@
+package org.sakaiproject.gradebookng.business.dto;
+
+import java.io.Serializable;
+
+import lombok.Getter;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.commons.lang.builder.ToStringStyle;
+import org.sakaiproject.user.api.User;
+
+/**
+ * The parts of a user that the gradebook shows, so the roster can be cached without holding on to the full {@link User}
+ *
+ */
+public class RosterEntry implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	@Getter
+	private final String id;
+	
+	@Getter
+	private final String eid;
+	
+	@Getter
+	private final String displayName;
+	
+	@Getter
+	private final String firstName;
+	
+	@Getter
+	private final String lastName;
+	
+	public RosterEntry(final String id, final String eid, final String displayName, final String firstName, final String lastName) {
+		this.id = id;
+		this.eid = eid;
+		this.displayName = displayName;
+		this.firstName = firstName;
+		this.lastName = lastName;
+	}
+	
+	public RosterEntry(final User user) {
+		this(user.getId(), user.getEid(), user.getDisplayName(), user.getFirstName(), user.getLastName());
+	}
+	
+	@Override
+	public String toString() {
+		return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+	}
+	
+}
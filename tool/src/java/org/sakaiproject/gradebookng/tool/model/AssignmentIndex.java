@@ -0,0 +1,62 @@
+package org.sakaiproject.gradebookng.tool.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+import org.sakaiproject.service.gradebook.shared.Assignment;
+
+/**
+ * Maps assignment ids to a dense ordinal so that grades can be stored in arrays rather than maps.
+ * 
+ * A single instance is shared by all of the {@link StudentGrades} in a matrix so it is only serialised once per page.
+ *
+ */
+public class AssignmentIndex implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	
+	//sorted so the ordinal can be found with a binary search
+	private final long[] assignmentIds;
+	
+	public AssignmentIndex(List<Assignment> assignments) {
+		this.assignmentIds = new long[assignments.size()];
+		for(int i = 0; i < this.assignmentIds.length; i++) {
+			this.assignmentIds[i] = assignments.get(i).getId();
+		}
+		Arrays.sort(this.assignmentIds);
+	}
+	
+	/**
+	 * Get the ordinal for an assignment
+	 * 
+	 * @param assignmentId
+	 * @return the ordinal or -1 if the assignment is not in this index
+	 */
+	public int getOrdinal(Long assignmentId) {
+		if(assignmentId == null) {
+			return -1;
+		}
+		int ordinal = Arrays.binarySearch(this.assignmentIds, assignmentId);
+		return (ordinal >= 0) ? ordinal : -1;
+	}
+	
+	/**
+	 * Does this index contain the given assignment
+	 * 
+	 * @param assignmentId
+	 * @return
+	 */
+	public boolean contains(Long assignmentId) {
+		return getOrdinal(assignmentId) >= 0;
+	}
+	
+	/**
+	 * Number of assignments in the index
+	 * @return
+	 */
+	public int size() {
+		return this.assignmentIds.length;
+	}
+
+}
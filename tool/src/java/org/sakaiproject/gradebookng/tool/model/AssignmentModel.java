@@ -0,0 +1,33 @@
+package org.sakaiproject.gradebookng.tool.model;
+
+import org.apache.wicket.injection.Injector;
+import org.apache.wicket.model.LoadableDetachableModel;
+import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
+import org.sakaiproject.service.gradebook.shared.Assignment;
+
+/**
+ * Detachable model for a gradebook assignment. Only the assignment id is kept between requests.
+ *
+ */
+public class AssignmentModel extends LoadableDetachableModel<Assignment> {
+
+	private static final long serialVersionUID = 1L;
+	
+	@SpringBean(name="org.sakaiproject.gradebookng.business.GradebookNgBusinessService")
+	private GradebookNgBusinessService businessService;
+	
+	private final Long assignmentId;
+	
+	public AssignmentModel(Assignment assignment) {
+		super(assignment);
+		this.assignmentId = assignment.getId();
+		Injector.get().inject(this);
+	}
+
+	@Override
+	protected Assignment load() {
+		return this.businessService.getGradebookAssignment(this.assignmentId);
+	}
+
+}
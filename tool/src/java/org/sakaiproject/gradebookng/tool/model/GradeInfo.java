@@ -28,6 +28,11 @@ public class GradeInfo implements Serializable {
 		this.gradeComment = gd.getGradeComment();
 	}
 	
+	public GradeInfo(String grade, String gradeComment) {
+		this.grade = grade;
+		this.gradeComment = gradeComment;
+	}
+	
 	@Override
 	public String toString() {
 		return ToStringBuilder.reflectionToString(this);
@@ -0,0 +1,29 @@
+package org.sakaiproject.gradebookng.tool.model;
+
+import lombok.Getter;
+
+import org.apache.wicket.ajax.AjaxRequestTarget;
+
+/**
+ * Broadcast to the page when a grade is edited in the grid, so that the components that depend on the cell
+ * (the student's course grade and the column statistics) can add themselves to the AJAX response.
+ *
+ */
+public class GradeUpdatedEvent {
+	
+	@Getter
+	private final AjaxRequestTarget target;
+	
+	@Getter
+	private final String studentUuid;
+	
+	@Getter
+	private final Long assignmentId;
+	
+	public GradeUpdatedEvent(final AjaxRequestTarget target, final String studentUuid, final Long assignmentId) {
+		this.target = target;
+		this.studentUuid = studentUuid;
+		this.assignmentId = assignmentId;
+	}
+	
+}
@@ -1,19 +1,18 @@
 package org.sakaiproject.gradebookng.tool.model;
 
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 import lombok.Getter;
 import lombok.Setter;
 
-import org.sakaiproject.service.gradebook.shared.GradeDefinition;
-import org.sakaiproject.user.api.User;
+import org.sakaiproject.gradebookng.business.dto.RosterEntry;
 
 /**
  * Model for storing the grades for a student
  * 
+ * Grades are held in an array indexed by the assignment ordinal from the shared {@link AssignmentIndex}. 
+ * Comments are held separately and the array is only created once a comment is added, as most cells have none.
+ * 
  * @author Steve Swinsburg (steve.swinsburg@gmail.com)
  *
  */
@@ -30,30 +29,89 @@ public class StudentGrades implements Serializable
 	@Getter
 	private String studentEid;
 	
+	@Getter
+	private String studentFirstName;
+	
+	@Getter
+	private String studentLastName;
+	
 	@Getter @Setter
 	private String courseGrade;
 	
 	@Getter
-	private Map<Long,GradeInfo> grades;
+	private AssignmentIndex assignmentIndex;
+	
+	private String[] grades;
+	
+	private String[] comments;
 		
 	public StudentGrades(){
 	}
 	
-	public StudentGrades(User u) {
+	public StudentGrades(RosterEntry u, AssignmentIndex assignmentIndex) {
 		this.studentUuid = u.getId();
 		this.studentEid = u.getEid();
 		this.studentName = u.getDisplayName();
-		this.grades = new HashMap<Long,GradeInfo>();
+		this.studentFirstName = u.getFirstName();
+		this.studentLastName = u.getLastName();
+		this.assignmentIndex = assignmentIndex;
+		this.grades = new String[assignmentIndex.size()];
+	}
+	
+	/**
+	 * Copy constructor
+	 * 
+	 * @param other the StudentGrades to copy
+	 */
+	public StudentGrades(StudentGrades other) {
+		this.studentUuid = other.studentUuid;
+		this.studentEid = other.studentEid;
+		this.studentName = other.studentName;
+		this.studentFirstName = other.studentFirstName;
+		this.studentLastName = other.studentLastName;
+		this.courseGrade = other.courseGrade;
+		this.assignmentIndex = other.assignmentIndex;
+		this.grades = other.grades.clone();
+		this.comments = (other.comments != null) ? other.comments.clone() : null;
 	}
 	
 	/**
-	 * Helper to add a grade to the map
+	 * Helper to add a grade
 	 * 
 	 * @param assignmentId
-	 * @param gd
+	 * @param gradeInfo
 	 */
 	public void addGrade(Long assignmentId, GradeInfo gradeInfo) {
-		this.grades.put(assignmentId, gradeInfo);
+		int ordinal = this.assignmentIndex.getOrdinal(assignmentId);
+		if(ordinal < 0) {
+			throw new IllegalArgumentException("Assignment " + assignmentId + " is not part of this gradebook matrix");
+		}
+		
+		//grades are drawn from a small set of values so share the instances
+		String grade = gradeInfo.getGrade();
+		this.grades[ordinal] = (grade != null) ? grade.intern() : null;
+		
+		String comment = gradeInfo.getGradeComment();
+		if(comment != null && this.comments == null) {
+			this.comments = new String[this.grades.length];
+		}
+		if(this.comments != null) {
+			this.comments[ordinal] = comment;
+		}
+	}
+	
+	/**
+	 * Get the grade for an assignment
+	 * 
+	 * @param assignmentId
+	 * @return the {@link GradeInfo} for the cell, which has a null grade if not graded, or null if the assignment is not part of this matrix
+	 */
+	public GradeInfo getGrade(Long assignmentId) {
+		int ordinal = this.assignmentIndex.getOrdinal(assignmentId);
+		if(ordinal < 0) {
+			return null;
+		}
+		return new GradeInfo(this.grades[ordinal], (this.comments != null) ? this.comments[ordinal] : null);
 	}
 	
 	
@@ -0,0 +1,80 @@
+package org.sakaiproject.gradebookng.tool.model;
+
+import java.util.Iterator;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import org.apache.wicket.extensions.markup.html.repeater.data.sort.SortOrder;
+import org.apache.wicket.extensions.markup.html.repeater.util.SortParam;
+import org.apache.wicket.extensions.markup.html.repeater.util.SortableDataProvider;
+import org.apache.wicket.injection.Injector;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
+import org.sakaiproject.gradebookng.business.MatrixSort;
+
+/**
+ * Data provider for the grade grid that only loads the page of students being displayed
+ * 
+ * The sort properties are those from {@link MatrixSort}. Sorting and searching are done on the server, against the cached matrix
+ * if there is one, otherwise against just the names and the sorted column, with the grades only loaded for the page being displayed.
+ * 
+ */
+public class StudentGradesDataProvider extends SortableDataProvider<StudentGrades, String> {
+
+	private static final long serialVersionUID = 1L;
+
+	@SpringBean(name="org.sakaiproject.gradebookng.business.GradebookNgBusinessService")
+	private GradebookNgBusinessService businessService;
+	
+	//used when the grid has no sort set
+	private final MatrixSort defaultSort;
+	
+	/**
+	 * Search on student name and eid, null or blank for all students
+	 */
+	@Getter @Setter
+	private String search;
+	
+	//only held for the duration of a request
+	private transient Long size;
+	
+	/**
+	 * @param defaultSortOrder the student sort to start with
+	 */
+	public StudentGradesDataProvider(org.sakaiproject.gradebookng.business.SortOrder defaultSortOrder) {
+		Injector.get().inject(this);
+		this.defaultSort = MatrixSort.byStudent(defaultSortOrder, true);
+		setSort(MatrixSort.property(defaultSortOrder), SortOrder.ASCENDING);
+	}
+	
+	@Override
+	public Iterator<? extends StudentGrades> iterator(long first, long count) {
+		SortParam<String> sortParam = getSort();
+		MatrixSort sort = (sortParam != null) ? MatrixSort.fromProperty(sortParam.getProperty(), sortParam.isAscending()) : null;
+		if(sort == null) {
+			sort = this.defaultSort;
+		}
+		return this.businessService.buildGradeMatrix((int) first, (int) count, sort, this.search).iterator();
+	}
+
+	@Override
+	public long size() {
+		if(this.size == null) {
+			this.size = Long.valueOf(this.businessService.getGradeableUserCount(this.search));
+		}
+		return this.size;
+	}
+
+	@Override
+	public IModel<StudentGrades> model(StudentGrades object) {
+		return new StudentGradesModel(object);
+	}
+	
+	@Override
+	public void detach() {
+		this.size = null;
+	}
+
+}
@@ -0,0 +1,46 @@
+package org.sakaiproject.gradebookng.tool.model;
+
+import org.apache.wicket.injection.Injector;
+import org.apache.wicket.model.LoadableDetachableModel;
+import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
+
+/**
+ * Detachable model for a row of the grade matrix. Only the student uuid is kept between requests,
+ * the row is resolved again from the business service when it is next needed.
+ *
+ */
+public class StudentGradesModel extends LoadableDetachableModel<StudentGrades> {
+
+	private static final long serialVersionUID = 1L;
+	
+	@SpringBean(name="org.sakaiproject.gradebookng.business.GradebookNgBusinessService")
+	private GradebookNgBusinessService businessService;
+	
+	private final String studentUuid;
+	
+	public StudentGradesModel(StudentGrades studentGrades) {
+		super(studentGrades);
+		this.studentUuid = studentGrades.getStudentUuid();
+		Injector.get().inject(this);
+	}
+
+	@Override
+	protected StudentGrades load() {
+		return this.businessService.getStudentGrades(this.studentUuid);
+	}
+	
+	@Override
+	public int hashCode() {
+		return this.studentUuid.hashCode();
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if(obj instanceof StudentGradesModel) {
+			return this.studentUuid.equals(((StudentGradesModel) obj).studentUuid);
+		}
+		return false;
+	}
+
+}
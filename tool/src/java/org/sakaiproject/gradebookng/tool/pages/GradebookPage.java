@@ -4,15 +4,29 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.wicket.Component;
-import org.apache.wicket.extensions.markup.html.repeater.data.sort.SortOrder;
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.ajax.attributes.AjaxRequestAttributes;
+import org.apache.wicket.ajax.attributes.ThrottlingSettings;
+import org.apache.wicket.ajax.form.OnChangeAjaxBehavior;
+import org.apache.wicket.ajax.markup.html.AjaxLink;
 import org.apache.wicket.markup.html.WebMarkupContainer;
+import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.form.Form;
-import org.apache.wicket.markup.repeater.data.ListDataProvider;
+import org.apache.wicket.markup.html.form.TextField;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.Model;
+import org.apache.wicket.model.PropertyModel;
+import org.apache.wicket.model.StringResourceModel;
+import org.apache.wicket.util.time.Duration;
+import org.sakaiproject.gradebookng.business.MatrixSort;
+import org.sakaiproject.gradebookng.business.RequestMetrics;
+import org.sakaiproject.gradebookng.business.SortOrder;
 import org.sakaiproject.gradebookng.business.dto.GradebookUserPreferences;
+import org.sakaiproject.gradebookng.tool.model.AssignmentModel;
 import org.sakaiproject.gradebookng.tool.model.StudentGrades;
+import org.sakaiproject.gradebookng.tool.model.StudentGradesDataProvider;
 import org.sakaiproject.gradebookng.tool.panels.AssignmentHeaderPanel;
+import org.sakaiproject.gradebookng.tool.panels.CourseGradeCellPanel;
 import org.sakaiproject.gradebookng.tool.panels.GradeItemCellPanel;
 import org.sakaiproject.service.gradebook.shared.Assignment;
 
@@ -33,9 +47,30 @@ import com.inmethod.grid.datagrid.DefaultDataGrid;
 public class GradebookPage extends BasePage {
 	
 	private static final long serialVersionUID = 1L;
+	
+	//number of students shown, and loaded, at a time
+	private static final int ROWS_PER_PAGE = 50;
+	
+	//number of assignment columns built at a time
+	private static final int COLUMNS_PER_PAGE = 20;
+	
+	private final StudentGradesDataProvider studentGradesDataProvider;
+	
+	private final SortOrder sortOrder;
+	
+	private final WebMarkupContainer gridContainer;
+	
+	private DataGrid grid;
+	
+	//index of the first assignment in the window
+	private int firstColumn = 0;
+	
+	private int columnCount;
 
 	@SuppressWarnings({ "rawtypes", "unchecked", "serial" })
 	public GradebookPage() {
+		long start = System.nanoTime();
+		
 		disableLink(this.gradebookPageLink);
 		
 		String currentUserUuid = this.businessService.getCurrentUserUuid();
@@ -44,42 +79,126 @@ public class GradebookPage extends BasePage {
 		add(form);
 		
         //get list of assignments. this allows us to build the columns and then fetch the grades for each student for each assignment from the map
-        final List<Assignment> assignments = this.businessService.getGradebookAssignments();
+        List<Assignment> assignments = this.businessService.getGradebookAssignments();
+        
+        //the grade matrix is loaded a page at a time by the data provider, sorted by the user's preferred student sort to start with
+        GradebookUserPreferences prefs = this.businessService.getUserPrefs();
+        SortOrder sortOrder = (prefs != null) ? SortOrder.fromValue(prefs.getSortOrder()) : SortOrder.LAST_NAME;
+        this.studentGradesDataProvider = new StudentGradesDataProvider(sortOrder);
+        this.sortOrder = sortOrder;
         
-        //get the grade matrix
-        final List<StudentGrades> grades = businessService.buildGradeMatrix();
+        //only a window of the assignment columns is built at a time, so the number of components is bounded however many items there are
+        this.columnCount = assignments.size();
         
-        final ListDataProvider<StudentGrades> listDataProvider = new ListDataProvider<StudentGrades>(grades);
+        this.gridContainer = new WebMarkupContainer("gridContainer");
+        this.gridContainer.setOutputMarkupId(true);
+        this.gridContainer.add(buildGrid(assignments));
+        form.add(this.gridContainer);
+        
+        //search box, filters the grid as the user types. Served from the search index on the cached matrix
+        TextField<String> search = new TextField<String>("search", new PropertyModel<String>(studentGradesDataProvider, "search"));
+        search.add(new OnChangeAjaxBehavior() {
+			@Override
+			protected void onUpdate(AjaxRequestTarget target) {
+				grid.setCurrentPage(0);
+				target.add(gridContainer);
+			}
+			
+			@Override
+			protected void updateAjaxAttributes(AjaxRequestAttributes attributes) {
+				super.updateAjaxAttributes(attributes);
+				attributes.setThrottlingSettings(new ThrottlingSettings("gradebookSearch", Duration.milliseconds(250)));
+			}
+        });
+        form.add(search);
+        
+        //move the column window
+        form.add(new AjaxLink<Void>("previousColumns") {
+			@Override
+			public void onClick(AjaxRequestTarget target) {
+				moveColumns(target, -COLUMNS_PER_PAGE);
+			}
+			
+			@Override
+			protected void onConfigure() {
+				super.onConfigure();
+				setEnabled(firstColumn > 0);
+			}
+        }.setOutputMarkupId(true));
+        form.add(new AjaxLink<Void>("nextColumns") {
+			@Override
+			public void onClick(AjaxRequestTarget target) {
+				moveColumns(target, COLUMNS_PER_PAGE);
+			}
+			
+			@Override
+			protected void onConfigure() {
+				super.onConfigure();
+				setEnabled(firstColumn + COLUMNS_PER_PAGE < columnCount);
+			}
+        }.setOutputMarkupId(true));
+        form.add(new Label("columnWindow", new StringResourceModel("label.columnWindow", this, null, new Object[] {
+        		new PropertyModel<Integer>(this, "firstColumnNumber"), new PropertyModel<Integer>(this, "lastColumnNumber"), new PropertyModel<Integer>(this, "columnCount") }))
+        		.setOutputMarkupId(true));
+		
+	
+		RequestMetrics.time("page.construct", start);
+	
+		//testing the save and load
+		//GradebookUserPreferences prefs = new GradebookUserPreferences(currentUserUuid);
+		//prefs.setSortOrder(3);
+		//this.businessService.saveUserPrefs(prefs);
+				
+	}
+	
+	/**
+	 * Build the grid for the current window of assignment columns. The student and course grade columns are always included.
+	 * 
+	 * @param assignments all of the assignments
+	 * @return
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked", "serial" })
+	private DataGrid buildGrid(List<Assignment> assignments) {
+		
         List<IGridColumn> cols = new ArrayList<IGridColumn>();
         
-        //these properties need to match the studentgrades model
-        cols.add(new PropertyColumn(new Model("Student Name"), "studentName", SortOrder.ASCENDING).setReorderable(false));
-        cols.add(new PropertyColumn(new Model("Student ID"), "studentEid").setReorderable(false));
-        cols.add(new PropertyColumn(new Model("Course Grade"), "courseGrade").setReorderable(false));
+        //these properties need to match the studentgrades model, the sort properties are from MatrixSort
+        cols.add(new PropertyColumn(new Model("Student Name"), "studentName", MatrixSort.property(this.sortOrder)).setReorderable(false));
+        cols.add(new PropertyColumn(new Model("Student ID"), "studentEid", MatrixSort.property(SortOrder.USER_ID)).setReorderable(false));
         
+        //the course grade cell redraws itself when one of the student's grades is edited
+        cols.add(new AbstractColumn("courseGrade", new Model("Course Grade"), MatrixSort.courseGradeProperty()) {
+        	
+        	@Override
+        	public Component newCell(WebMarkupContainer parent, String componentId, IModel rowModel) {
+        		return new CourseGradeCellPanel(componentId, rowModel);
+        	}
+        	
+        }.setReorderable(false));
         
-        //build the rest of the columns based on the assignment list
-        for(final Assignment assignment: assignments) {
+        
+        //build the rest of the columns based on the window of the assignment list
+        //only the assignment id and detachable models are captured so the assignments themselves are not serialised with the page
+        for(Assignment assignment: assignments.subList(this.firstColumn, Math.min(this.firstColumn + COLUMNS_PER_PAGE, assignments.size()))) {
+        	
+        	final Long assignmentId = assignment.getId();
+        	final AssignmentModel assignmentModel = new AssignmentModel(assignment);
         	
-        	AbstractColumn column = new AbstractColumn(String.valueOf(assignment.getId()), new Model(assignment.getName())) {
+        	AbstractColumn column = new AbstractColumn(String.valueOf(assignmentId), new PropertyModel(assignmentModel, "name"), MatrixSort.property(assignmentId)) {
 
             	@Override
             	public Component newHeader(String componentId) {
-            		AssignmentHeaderPanel panel = new AssignmentHeaderPanel(componentId, assignment);
+            		AssignmentHeaderPanel panel = new AssignmentHeaderPanel(componentId, assignmentModel);
     				return panel;
             		
             	}
             	
     			@Override
     			public Component newCell(WebMarkupContainer parent, String componentId, IModel rowModel) {
-    				StudentGrades studentsGrades = (StudentGrades) rowModel.getObject();
-    				GradeItemCellPanel panel = new GradeItemCellPanel(componentId, assignment.getId(), studentsGrades);
+    				GradeItemCellPanel panel = new GradeItemCellPanel(componentId, assignmentId, rowModel);
     				return panel;
     			}
     			
-    			//TODO since we are now using a custom cell, we still need this to be editable, it will be done in the panel itself.
-
-    			
             	
             };
             
@@ -122,25 +241,44 @@ public class GradebookPage extends BasePage {
         cols.add(custom);
         */
         
-       
-       
-        
-        DataGrid grid = new DefaultDataGrid("grid", new DataProviderAdapter(listDataProvider), cols);
-        form.add(grid);
-        
-        grid.setAllowSelectMultiple(false);
-		grid.setSelectToEdit(false);
-		grid.setClickRowToSelect(true);
-		grid.setClickRowToDeselect(true);
+        this.grid = new DefaultDataGrid("grid", new DataProviderAdapter(this.studentGradesDataProvider), cols);
+        this.grid.setRowsPerPage(ROWS_PER_PAGE);
+        this.grid.setAllowSelectMultiple(false);
+        this.grid.setSelectToEdit(false);
+        this.grid.setClickRowToSelect(true);
+        this.grid.setClickRowToDeselect(true);
+        return this.grid;
+	}
+	
+	/**
+	 * Move the window of assignment columns and redraw the grid, staying on the same page of students
+	 * 
+	 * @param target
+	 * @param offset number of columns to move by
+	 */
+	private void moveColumns(AjaxRequestTarget target, int offset) {
+		List<Assignment> assignments = this.businessService.getGradebookAssignments();
+		this.columnCount = assignments.size();
+		this.firstColumn = Math.max(0, Math.min(this.firstColumn + offset, ((this.columnCount - 1) / COLUMNS_PER_PAGE) * COLUMNS_PER_PAGE));
+		
+		long currentPage = this.grid.getCurrentPage();
+		this.gridContainer.replace(buildGrid(assignments));
+		this.grid.setCurrentPage(currentPage);
 		
+		target.add(this.gridContainer, get("form:previousColumns"), get("form:nextColumns"), get("form:columnWindow"));
+	}
 	
-		//testing the save and load
-		//GradebookUserPreferences prefs = new GradebookUserPreferences(currentUserUuid);
-		//prefs.setSortOrder(3);
-		//this.businessService.saveUserPrefs(prefs);
-				
+	public int getFirstColumnNumber() {
+		return Math.min(this.firstColumn + 1, this.columnCount);
 	}
 	
+	public int getLastColumnNumber() {
+		return Math.min(this.firstColumn + COLUMNS_PER_PAGE, this.columnCount);
+	}
+	
+	public int getColumnCount() {
+		return this.columnCount;
+	}
 	
 	
 }
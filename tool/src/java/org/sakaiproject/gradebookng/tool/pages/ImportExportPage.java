@@ -1,5 +1,35 @@
 package org.sakaiproject.gradebookng.tool.pages;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.apache.wicket.Session;
+import org.apache.wicket.markup.html.WebMarkupContainer;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.markup.html.form.Form;
+import org.apache.wicket.markup.html.form.upload.FileUpload;
+import org.apache.wicket.markup.html.form.upload.FileUploadField;
+import org.apache.wicket.markup.html.link.Link;
+import org.apache.wicket.markup.html.link.ResourceLink;
+import org.apache.wicket.markup.html.list.ListItem;
+import org.apache.wicket.markup.html.list.ListView;
+import org.apache.wicket.model.AbstractReadOnlyModel;
+import org.apache.wicket.model.PropertyModel;
+import org.apache.wicket.model.StringResourceModel;
+import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.apache.wicket.util.lang.Bytes;
+import org.sakaiproject.gradebookng.business.GradeImporter;
+import org.sakaiproject.gradebookng.business.dto.GradeImportChange;
+import org.sakaiproject.gradebookng.business.dto.GradeImportReport;
+import org.sakaiproject.gradebookng.tool.resources.GradeExportResource;
+
 
 /**
  * Import Export page
@@ -10,9 +40,164 @@ package org.sakaiproject.gradebookng.tool.pages;
 public class ImportExportPage extends BasePage {
 	
 	private static final long serialVersionUID = 1L;
+	
+	private static final Logger log = Logger.getLogger(ImportExportPage.class);
+	
+	@SpringBean(name="org.sakaiproject.gradebookng.business.GradeImporter")
+	private GradeImporter gradeImporter;
+	
+	//the uploaded file is kept on disk between the preview and the commit, so it is read twice rather than held in memory.
+	//it is deleted on confirm or cancel, and otherwise when the session ends or the JVM exits
+	private File importFile;
+	
+	private GradeImportReport preview;
 
 	public ImportExportPage() {
 		
+		//export is streamed straight to the response
+		add(new ResourceLink<Void>("exportLink", new GradeExportResource()));
+		
+		//import
+		final FileUploadField uploadField = new FileUploadField("uploadFile");
+		
+		Form<Void> uploadForm = new Form<Void>("uploadForm") {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected void onSubmit() {
+				FileUpload upload = uploadField.getFileUpload();
+				if(upload == null) {
+					return;
+				}
+				discardImport();
+				try {
+					importFile = upload.writeToTempFile();
+					importFile.deleteOnExit();
+					//if the user never comes back to confirm or cancel, the file goes once the session is gone
+					getApplication().getResourceSettings().getFileCleaner().track(importFile, Session.get());
+					preview = gradeImporter.preview(openImport());
+				} catch (Exception e) {
+					log.error("Could not read grade import: " + e.getMessage(), e);
+					error(getString("importExport.import.error"));
+					discardImport();
+				}
+			}
+		};
+		uploadForm.setMultiPart(true);
+		uploadForm.setMaxSize(Bytes.megabytes(50));
+		uploadForm.add(uploadField);
+		add(uploadForm);
+		
+		//preview of what would change
+		WebMarkupContainer previewContainer = new WebMarkupContainer("preview") {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected void onConfigure() {
+				super.onConfigure();
+				setVisible(preview != null);
+			}
+		};
+		add(previewContainer);
+		
+		previewContainer.add(new Label("summary", new StringResourceModel("importExport.import.summary", this, null, 
+				new PropertyModel<Integer>(this, "preview.rows"),
+				new PropertyModel<Integer>(this, "preview.changed"),
+				new PropertyModel<Integer>(this, "preview.unchanged"),
+				new PropertyModel<Integer>(this, "preview.invalid"),
+				new PropertyModel<Integer>(this, "preview.unknownStudents"))));
+		
+		previewContainer.add(new Label("ignoredColumns", new AbstractReadOnlyModel<String>() {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			public String getObject() {
+				return (preview != null) ? StringUtils.join(preview.getIgnoredColumns(), ", ") : null;
+			}
+		}));
+		
+		previewContainer.add(new Label("unknownStudents", new AbstractReadOnlyModel<String>() {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			public String getObject() {
+				return (preview != null) ? StringUtils.join(preview.getSampleUnknownStudents(), ", ") : null;
+			}
+		}));
 		
+		previewContainer.add(newChangeList("changes", "preview.sampleChanges"));
+		previewContainer.add(newChangeList("invalid", "preview.sampleInvalid"));
+		
+		previewContainer.add(new Link<Void>("confirmLink") {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			public void onClick() {
+				try {
+					GradeImportReport result = gradeImporter.commit(openImport());
+					info(new StringResourceModel("importExport.import.done", ImportExportPage.this, null, result.getSaved(), result.getFailed()).getString());
+				} catch (IOException e) {
+					log.error("Could not read grade import: " + e.getMessage(), e);
+					error(getString("importExport.import.error"));
+				} finally {
+					discardImport();
+				}
+			}
+		});
+		
+		previewContainer.add(new Link<Void>("cancelLink") {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			public void onClick() {
+				discardImport();
+			}
+		});
+		
+	}
+	
+	private ListView<GradeImportChange> newChangeList(final String id, final String expression) {
+		return new ListView<GradeImportChange>(id, new PropertyModel<List<GradeImportChange>>(this, expression)) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected void populateItem(final ListItem<GradeImportChange> item) {
+				GradeImportChange change = item.getModelObject();
+				item.add(new Label("studentEid", change.getStudentEid()));
+				item.add(new Label("studentName", change.getStudentName()));
+				item.add(new Label("assignmentName", change.getAssignmentName()));
+				item.add(new Label("currentGrade", change.getCurrentGrade()));
+				item.add(new Label("newGrade", change.getNewGrade()));
+			}
+			
+			@Override
+			protected void onConfigure() {
+				super.onConfigure();
+				setVisible(!getList().isEmpty());
+			}
+		};
+	}
+	
+	/**
+	 * Don't keep the file once there is no preview to confirm, eg the preview failed
+	 */
+	@Override
+	protected void onDetach() {
+		if(this.preview == null && this.importFile != null) {
+			discardImport();
+		}
+		super.onDetach();
+	}
+	
+	private Reader openImport() throws IOException {
+		return new BufferedReader(new InputStreamReader(new FileInputStream(this.importFile), "UTF-8"));
+	}
+	
+	private void discardImport() {
+		if(this.importFile != null && !this.importFile.delete()) {
+			this.importFile.deleteOnExit();
+		}
+		this.importFile = null;
+		this.preview = null;
 	}
 }
@@ -1,13 +1,24 @@
 package org.sakaiproject.gradebookng.tool.panels;
 
+import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
+import org.apache.wicket.AttributeModifier;
+import org.apache.wicket.event.IEvent;
 import org.apache.wicket.markup.html.WebMarkupContainer;
 import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.link.ExternalLink;
 import org.apache.wicket.markup.html.panel.Panel;
-import org.apache.wicket.model.Model;
+import org.apache.wicket.model.AbstractReadOnlyModel;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.LoadableDetachableModel;
+import org.apache.wicket.model.PropertyModel;
+import org.apache.wicket.model.StringResourceModel;
+import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
+import org.sakaiproject.gradebookng.business.dto.AssignmentStatistics;
+import org.sakaiproject.gradebookng.tool.model.GradeUpdatedEvent;
 import org.sakaiproject.service.gradebook.shared.Assignment;
 
 /**
@@ -20,19 +31,69 @@ import org.sakaiproject.service.gradebook.shared.Assignment;
 public class AssignmentHeaderPanel extends Panel {
 
 	private static final long serialVersionUID = 1L;
+	
+	@SpringBean(name="org.sakaiproject.gradebookng.business.GradebookNgBusinessService")
+	private GradebookNgBusinessService businessService;
+	
+	private final IModel<AssignmentStatistics> statisticsModel;
+	
+	private final WebMarkupContainer averageGradeSection;
+	
+	private final Long assignmentId;
 
 
-	public AssignmentHeaderPanel(String id, Assignment assignment) {
-		super(id);
+	public AssignmentHeaderPanel(String id, final IModel<Assignment> assignmentModel) {
+		super(id, assignmentModel);
+		
+		this.assignmentId = assignmentModel.getObject().getId();
 		
-		add(new Label("title", new Model<String>(assignment.getName())));
+		add(new Label("title", new PropertyModel<String>(assignmentModel, "name")));
 		
-		WebMarkupContainer averageGradeSection = new WebMarkupContainer("averageGradeSection");
-		averageGradeSection.add(new Label("averagePoints", new Model("TODO")));
-		averageGradeSection.add(new Label("totalPoints", new Model<Double>(assignment.getPoints())));
-		add(averageGradeSection);
+		//statistics are precomputed with the cached matrix and kept there for its gradebook version, so they are only held here for the request
+		this.statisticsModel = new LoadableDetachableModel<AssignmentStatistics>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected AssignmentStatistics load() {
+				return businessService.getAssignmentStatistics(assignmentId);
+			}
+		};
 		
-		add(new Label("dueDate", new Model<String>(getDueDate(assignment.getDueDate()))));
+		this.averageGradeSection = new WebMarkupContainer("averageGradeSection");
+		this.averageGradeSection.setOutputMarkupId(true);
+		this.averageGradeSection.add(new Label("averagePoints", new AbstractReadOnlyModel<String>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public String getObject() {
+				AssignmentStatistics statistics = statisticsModel.getObject();
+				return formatGrade((statistics != null) ? statistics.getMean() : null);
+			}
+		}));
+		this.averageGradeSection.add(new Label("totalPoints", new PropertyModel<Double>(assignmentModel, "points")));
+		this.averageGradeSection.add(new AttributeModifier("title", new AbstractReadOnlyModel<String>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public String getObject() {
+				AssignmentStatistics statistics = statisticsModel.getObject();
+				if(statistics == null || statistics.getCount() == 0) {
+					return null;
+				}
+				return new StringResourceModel("label.statistics", AssignmentHeaderPanel.this, null, new Object[] {
+						formatGrade(statistics.getMedian()), formatGrade(statistics.getMin()), formatGrade(statistics.getMax()), statistics.getCount() }).getString();
+			}
+		}));
+		add(this.averageGradeSection);
+		
+		add(new Label("dueDate", new AbstractReadOnlyModel<String>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public String getObject() {
+				return getDueDate(assignmentModel.getObject().getDueDate());
+			}
+		}));
 		
 		//menu
 		//AjaxLink menu = new AjaxLink("menu", "http://google.com");
@@ -42,6 +103,37 @@ public class AssignmentHeaderPanel extends Panel {
 	}
 	
 	
+	/**
+	 * Redraw the statistics when a grade in this column is edited
+	 */
+	@Override
+	public void onEvent(IEvent<?> event) {
+		super.onEvent(event);
+		
+		if(event.getPayload() instanceof GradeUpdatedEvent) {
+			GradeUpdatedEvent update = (GradeUpdatedEvent) event.getPayload();
+			if(this.assignmentId.equals(update.getAssignmentId())) {
+				this.statisticsModel.detach();
+				update.getTarget().add(this.averageGradeSection);
+			}
+		}
+	}
+	
+	@Override
+	protected void onDetach() {
+		this.statisticsModel.detach();
+		super.onDetach();
+	}
+	
+	private String formatGrade(Double grade) {
+		if(grade == null) {
+			return "-";
+		}
+		NumberFormat nf = NumberFormat.getNumberInstance(getLocale());
+		nf.setMaximumFractionDigits(2);
+		return nf.format(grade);
+	}
+	
 	private String getDueDate(Date assignmentDueDate) {
 		//TODO locale formatting via ResourceLoader
 		
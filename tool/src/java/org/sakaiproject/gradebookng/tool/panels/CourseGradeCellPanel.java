@@ -0,0 +1,44 @@
+package org.sakaiproject.gradebookng.tool.panels;
+
+import org.apache.wicket.event.IEvent;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.markup.html.panel.Panel;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.PropertyModel;
+import org.sakaiproject.gradebookng.tool.model.GradeUpdatedEvent;
+import org.sakaiproject.gradebookng.tool.model.StudentGrades;
+
+/**
+ * The panel for the course grade cell in the grid. Redraws itself when one of the student's grades is edited.
+ *
+ */
+public class CourseGradeCellPanel extends Panel {
+	
+	private static final long serialVersionUID = 1L;
+	
+	//kept so events can be matched without loading the row
+	private final String studentUuid;
+	
+	public CourseGradeCellPanel(String id, final IModel<StudentGrades> rowModel) {
+		super(id, rowModel);
+		setOutputMarkupId(true);
+		
+		this.studentUuid = rowModel.getObject().getStudentUuid();
+		
+		add(new Label("courseGrade", new PropertyModel<String>(rowModel, "courseGrade")));
+	}
+	
+	@Override
+	public void onEvent(IEvent<?> event) {
+		super.onEvent(event);
+		
+		if(event.getPayload() instanceof GradeUpdatedEvent) {
+			GradeUpdatedEvent update = (GradeUpdatedEvent) event.getPayload();
+			if(this.studentUuid.equals(update.getStudentUuid())) {
+				getDefaultModel().detach();
+				update.getTarget().add(this);
+			}
+		}
+	}
+
+}
@@ -1,35 +1,105 @@
 package org.sakaiproject.gradebookng.tool.panels;
 
-import org.apache.wicket.markup.html.basic.Label;
-import org.apache.wicket.markup.html.link.ExternalLink;
+import org.apache.commons.lang.StringUtils;
+import org.apache.wicket.AttributeModifier;
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.ajax.form.AjaxFormComponentUpdatingBehavior;
+import org.apache.wicket.event.Broadcast;
+import org.apache.wicket.markup.html.form.TextField;
 import org.apache.wicket.markup.html.panel.Panel;
+import org.apache.wicket.model.AbstractReadOnlyModel;
+import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.Model;
+import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
 import org.sakaiproject.gradebookng.tool.model.GradeInfo;
+import org.sakaiproject.gradebookng.tool.model.GradeUpdatedEvent;
 import org.sakaiproject.gradebookng.tool.model.StudentGrades;
 
 /**
- * The panel for the cell of
+ * The panel for the cell of a grade item in the grid. The grade can be edited in place and is saved over AJAX,
+ * then only this cell and the components that depend on it are redrawn, see {@link GradeUpdatedEvent}.
+ * 
  * @author Steve Swinsburg (steve.swinsburg@gmail.com)
  *
  */
 public class GradeItemCellPanel extends Panel {
-
+	
 	private static final long serialVersionUID = 1L;
-
-	public GradeItemCellPanel(String id, Long assignmentId, StudentGrades studentGrades) {
-		super(id);
-		
-		//TODO harden this
-		GradeInfo gradeInfo = studentGrades.getGrades().get(assignmentId);
+	
+	@SpringBean(name="org.sakaiproject.gradebookng.business.GradebookNgBusinessService")
+	private GradebookNgBusinessService businessService;
+	
+	//set when the last edit could not be saved, cleared by the next edit
+	private boolean saveFailed;
+	
+	public GradeItemCellPanel(String id, final Long assignmentId, final IModel<StudentGrades> rowModel) {
+		super(id, rowModel);
+		setOutputMarkupId(true);
 		
-		add(new Label("grade", new Model(gradeInfo.getGrade())));
+		//the field is reset from the row model on render so only the row model and the current value are held
+		final TextField<String> grade = new TextField<String>("grade", new Model<String>()) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected void onConfigure() {
+				super.onConfigure();
+				GradeInfo gradeInfo = getGradeInfo(rowModel, assignmentId);
+				setModelObject((gradeInfo != null) ? gradeInfo.getGrade() : null);
+			}
+		};
 		
-		//TODO since we are using a custom column panel here we still need this to be editable
+		grade.add(new AjaxFormComponentUpdatingBehavior("change") {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected void onUpdate(AjaxRequestTarget target) {
+				StudentGrades studentGrades = rowModel.getObject();
+				if(studentGrades == null) {
+					return;
+				}
+				GradeInfo gradeInfo = studentGrades.getGrade(assignmentId);
+				String comment = (gradeInfo != null) ? gradeInfo.getGradeComment() : null;
+				String newGrade = StringUtils.trimToNull(grade.getModelObject());
+				
+				saveFailed = !businessService.queueGrade(assignmentId, studentGrades.getStudentUuid(), newGrade, comment);
+				
+				//the row is replaced in the matrix when a grade is saved, so reload it for the redraw
+				rowModel.detach();
+				
+				target.add(GradeItemCellPanel.this);
+				if(!saveFailed) {
+					send(getPage(), Broadcast.BREADTH, new GradeUpdatedEvent(target, studentGrades.getStudentUuid(), assignmentId));
+				}
+			}
+		});
 		
+		grade.add(new AttributeModifier("class", new AbstractReadOnlyModel<String>() {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			public String getObject() {
+				return saveFailed ? "gradeInput gradeSaveError" : "gradeInput";
+			}
+		}));
+		grade.add(new AttributeModifier("title", new AbstractReadOnlyModel<String>() {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			public String getObject() {
+				return saveFailed ? getString("grade.save.error") : null;
+			}
+		}));
+		add(grade);
 		
 		//menu
 		
-
+	
+	}
+	
+	private static GradeInfo getGradeInfo(final IModel<StudentGrades> rowModel, final Long assignmentId) {
+		StudentGrades studentGrades = rowModel.getObject();
+		return (studentGrades != null) ? studentGrades.getGrade(assignmentId) : null;
 	}
 
 }
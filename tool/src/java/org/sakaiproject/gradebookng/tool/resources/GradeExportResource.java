@@ -0,0 +1,135 @@
+package org.sakaiproject.gradebookng.tool.resources;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.wicket.Session;
+import org.apache.wicket.injection.Injector;
+import org.apache.wicket.model.ResourceModel;
+import org.apache.wicket.request.resource.AbstractResource;
+import org.apache.wicket.request.resource.ContentDisposition;
+import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.sakaiproject.gradebookng.business.CsvValues;
+import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
+import org.sakaiproject.gradebookng.business.StudentGradesHandler;
+import org.sakaiproject.gradebookng.tool.model.GradeInfo;
+import org.sakaiproject.gradebookng.tool.model.StudentGrades;
+import org.sakaiproject.service.gradebook.shared.Assignment;
+
+/**
+ * Exports the grade matrix for the current site as CSV.
+ * 
+ * The rows are written straight to the response as each chunk of students is loaded, so the export runs in roughly constant memory
+ * and starts sending as soon as the first chunk is ready.
+ * 
+ * For users that can grade all the response has an ETag of the gradebook version and the locale of the headers,
+ * so a client that already has the current export gets a 304 and the export is not regenerated.
+ *
+ */
+public class GradeExportResource extends AbstractResource {
+
+	private static final long serialVersionUID = 1L;
+	
+	//number of students loaded and written at a time
+	private static final int CHUNK_SIZE = 200;
+	
+	@SpringBean(name="org.sakaiproject.gradebookng.business.GradebookNgBusinessService")
+	private GradebookNgBusinessService businessService;
+	
+	public GradeExportResource() {
+		Injector.get().inject(this);
+	}
+	
+	@Override
+	protected ResourceResponse newResourceResponse(final Attributes attributes) {
+		ResourceResponse response = new ResourceResponse();
+		response.setContentType("text/csv");
+		response.setTextEncoding("UTF-8");
+		response.setFileName("gradebook_export.csv");
+		response.setContentDisposition(ContentDisposition.ATTACHMENT);
+		response.disableCaching();
+		
+		String tag = this.businessService.getGradebookETag(this.businessService.getGradebookVersion());
+		if(tag != null && GradebookETags.notModified(attributes, response, tag + "-" + Session.get().getLocale())) {
+			return response;
+		}
+		
+		response.setWriteCallback(new WriteCallback() {
+			@Override
+			public void writeData(final Attributes attributes) throws IOException {
+				final Writer writer = new BufferedWriter(new OutputStreamWriter(attributes.getResponse().getOutputStream(), "UTF-8"));
+				
+				final List<Assignment> assignments = businessService.getGradebookAssignments();
+				if(assignments == null) {
+					writer.flush();
+					return;
+				}
+				
+				List<String> header = new ArrayList<String>();
+				header.add(new ResourceModel("export.header.studentId").getObject());
+				header.add(new ResourceModel("export.header.studentName").getObject());
+				for(Assignment assignment: assignments) {
+					header.add(assignment.getName());
+				}
+				header.add(new ResourceModel("export.header.courseGrade").getObject());
+				writeLine(writer, header);
+				
+				businessService.streamGradeMatrix(CHUNK_SIZE, new StudentGradesHandler() {
+					@Override
+					public void handle(final List<StudentGrades> rows) throws IOException {
+						List<String> line = new ArrayList<String>(assignments.size() + 3);
+						for(StudentGrades row: rows) {
+							line.clear();
+							line.add(row.getStudentEid());
+							line.add(row.getStudentName());
+							for(Assignment assignment: assignments) {
+								GradeInfo gradeInfo = row.getGrade(assignment.getId());
+								line.add((gradeInfo != null) ? gradeInfo.getGrade() : null);
+							}
+							line.add(row.getCourseGrade());
+							writeLine(writer, line);
+						}
+						//send each chunk as it is done
+						writer.flush();
+					}
+				});
+				
+				writer.flush();
+			}
+		});
+		
+		return response;
+	}
+	
+	/**
+	 * Write a line of CSV, quoting values where needed and escaping anything that could be run as a formula (see {@link CsvValues})
+	 * 
+	 * @param writer
+	 * @param values
+	 * @throws IOException
+	 */
+	private static void writeLine(final Writer writer, final List<String> values) throws IOException {
+		for(int i = 0; i < values.size(); i++) {
+			if(i > 0) {
+				writer.write(',');
+			}
+			String value = CsvValues.escape(values.get(i));
+			if(value == null) {
+				continue;
+			}
+			if(value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+				writer.write('"');
+				writer.write(value.replace("\"", "\"\""));
+				writer.write('"');
+			} else {
+				writer.write(value);
+			}
+		}
+		writer.write("\r\n");
+	}
+	
+}
@@ -0,0 +1,178 @@
+package org.sakaiproject.gradebookng.tool.resources;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import org.apache.wicket.injection.Injector;
+import org.apache.wicket.request.resource.AbstractResource;
+import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
+import org.sakaiproject.gradebookng.business.StudentGradesHandler;
+import org.sakaiproject.gradebookng.tool.model.GradeInfo;
+import org.sakaiproject.gradebookng.tool.model.StudentGrades;
+import org.sakaiproject.service.gradebook.shared.Assignment;
+
+/**
+ * Read only JSON view of the grade matrix for the current site, for a client side grid.
+ * 
+ * The assignments are listed once, then each student has a dense array of grades in the same order as the assignments:
+ * <pre>
+ * {"version":1401000000123,"assignments":[{"id":1,"name":"Quiz 1","points":10.0,"dueDate":1401000000000}],
+ *  "students":[{"id":"uuid","eid":"s1","name":"Student One","courseGrade":"A","grades":["9.0",null]}]}
+ * </pre>
+ * 
+ * Students are written as each chunk is loaded, like the CSV export. For users that can grade all the response has an ETag of the gradebook version,
+ * and a request with a matching If-None-Match gets a 304 without the matrix being written. The response is not stored by the browser,
+ * so the client keeps the last response and its ETag itself.
+ *
+ */
+public class GradeMatrixJsonResource extends AbstractResource {
+
+	private static final long serialVersionUID = 1L;
+	
+	//number of students loaded and written at a time
+	private static final int CHUNK_SIZE = 200;
+	
+	@SpringBean(name="org.sakaiproject.gradebookng.business.GradebookNgBusinessService")
+	private GradebookNgBusinessService businessService;
+	
+	public GradeMatrixJsonResource() {
+		Injector.get().inject(this);
+	}
+	
+	@Override
+	protected ResourceResponse newResourceResponse(final Attributes attributes) {
+		ResourceResponse response = new ResourceResponse();
+		response.setContentType("application/json");
+		response.setTextEncoding("UTF-8");
+		response.disableCaching();
+		
+		//read before the matrix is written, so the content is never older than the version
+		final Long version = this.businessService.getGradebookVersion();
+		if(version != null && GradebookETags.notModified(attributes, response, this.businessService.getGradebookETag(version))) {
+			return response;
+		}
+		
+		response.setWriteCallback(new WriteCallback() {
+			@Override
+			public void writeData(final Attributes attributes) throws IOException {
+				final Writer writer = new BufferedWriter(new OutputStreamWriter(attributes.getResponse().getOutputStream(), "UTF-8"));
+				
+				final List<Assignment> assignments = businessService.getGradebookAssignments();
+				
+				writer.write("{\"version\":");
+				writer.write(String.valueOf(version));
+				
+				writer.write(",\"assignments\":[");
+				if(assignments != null) {
+					for(int i = 0; i < assignments.size(); i++) {
+						Assignment assignment = assignments.get(i);
+						if(i > 0) {
+							writer.write(',');
+						}
+						writer.write("{\"id\":");
+						writer.write(String.valueOf(assignment.getId()));
+						writer.write(",\"name\":");
+						writeString(writer, assignment.getName());
+						writer.write(",\"points\":");
+						writer.write(String.valueOf(assignment.getPoints()));
+						writer.write(",\"dueDate\":");
+						writer.write((assignment.getDueDate() != null) ? String.valueOf(assignment.getDueDate().getTime()) : "null");
+						writer.write('}');
+					}
+				}
+				
+				writer.write("],\"students\":[");
+				if(assignments != null) {
+					businessService.streamGradeMatrix(CHUNK_SIZE, new StudentGradesHandler() {
+						private boolean first = true;
+						
+						@Override
+						public void handle(final List<StudentGrades> rows) throws IOException {
+							for(StudentGrades row: rows) {
+								if(!this.first) {
+									writer.write(',');
+								}
+								this.first = false;
+								writeStudent(writer, row, assignments);
+							}
+							//send each chunk as it is done
+							writer.flush();
+						}
+					});
+				}
+				writer.write("]}");
+				writer.flush();
+			}
+		});
+		
+		return response;
+	}
+	
+	private static void writeStudent(final Writer writer, final StudentGrades row, final List<Assignment> assignments) throws IOException {
+		writer.write("{\"id\":");
+		writeString(writer, row.getStudentUuid());
+		writer.write(",\"eid\":");
+		writeString(writer, row.getStudentEid());
+		writer.write(",\"name\":");
+		writeString(writer, row.getStudentName());
+		writer.write(",\"courseGrade\":");
+		writeString(writer, row.getCourseGrade());
+		writer.write(",\"grades\":[");
+		for(int i = 0; i < assignments.size(); i++) {
+			if(i > 0) {
+				writer.write(',');
+			}
+			GradeInfo gradeInfo = row.getGrade(assignments.get(i).getId());
+			writeString(writer, (gradeInfo != null) ? gradeInfo.getGrade() : null);
+		}
+		writer.write("]}");
+	}
+	
+	/**
+	 * Write a JSON string, or null
+	 * 
+	 * @param writer
+	 * @param value
+	 * @throws IOException
+	 */
+	private static void writeString(final Writer writer, final String value) throws IOException {
+		if(value == null) {
+			writer.write("null");
+			return;
+		}
+		writer.write('"');
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch(c) {
+				case '"':
+					writer.write("\\\"");
+					break;
+				case '\\':
+					writer.write("\\\\");
+					break;
+				case '\n':
+					writer.write("\\n");
+					break;
+				case '\r':
+					writer.write("\\r");
+					break;
+				case '\t':
+					writer.write("\\t");
+					break;
+				default:
+					//other control characters, and the line separators that are not valid in JavaScript strings
+					if(c < 0x20 || c == '\u2028' || c == '\u2029') {
+						writer.write(String.format("\\u%04x", (int) c));
+					} else {
+						writer.write(c);
+					}
+			}
+		}
+		writer.write('"');
+	}
+	
+}
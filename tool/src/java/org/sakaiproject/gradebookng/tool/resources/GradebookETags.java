@@ -0,0 +1,50 @@
+package org.sakaiproject.gradebookng.tool.resources;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.wicket.request.http.WebRequest;
+import org.apache.wicket.request.resource.AbstractResource.ResourceResponse;
+import org.apache.wicket.request.resource.AbstractResource.WriteCallback;
+import org.apache.wicket.request.resource.IResource.Attributes;
+
+/**
+ * ETags for resources built from a gradebook, based on the gradebook version and the node it is from.
+ * A request that already has the current version gets a 304 and nothing is built.
+ *
+ */
+final class GradebookETags {
+	
+	private GradebookETags() {
+	}
+	
+	/**
+	 * Add the ETag to a response, and turn it into a 304 if the request already has it
+	 *
+	 * @param attributes
+	 * @param response
+	 * @param tag the opaque part of the ETag, eg from {@link org.sakaiproject.gradebookng.business.GradebookNgBusinessService#getGradebookETag(Long)}
+	 * @return true if the response is a 304 and there is nothing more to write
+	 */
+	static boolean notModified(final Attributes attributes, final ResourceResponse response, final String tag) {
+		String etag = "\"" + tag + "\"";
+		response.getHeaders().addHeader("ETag", etag);
+		
+		String ifNoneMatch = ((WebRequest) attributes.getRequest()).getHeader("If-None-Match");
+		if(ifNoneMatch == null || !(StringUtils.equals(ifNoneMatch.trim(), "*") || StringUtils.contains(ifNoneMatch, etag))) {
+			return false;
+		}
+		
+		response.setStatusCode(HttpServletResponse.SC_NOT_MODIFIED);
+		response.setWriteCallback(new WriteCallback() {
+			@Override
+			public void writeData(final Attributes attributes) throws IOException {
+				//nothing to send
+			}
+		});
+		return true;
+	}
+
+}
@@ -0,0 +1,90 @@
+package org.sakaiproject.gradebookng.business;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class CsvReaderTest {
+	
+	@Test
+	public void plainRecords() throws IOException {
+		CsvReader csv = reader("a,b,c\n1,2,3\n");
+		
+		assertEquals(Arrays.asList("a", "b", "c"), csv.readRecord());
+		assertEquals(Arrays.asList("1", "2", "3"), csv.readRecord());
+		assertNull(csv.readRecord());
+	}
+	
+	@Test
+	public void lastLineWithoutALineEnding() throws IOException {
+		CsvReader csv = reader("a,b\n1,2");
+		
+		csv.readRecord();
+		assertEquals(Arrays.asList("1", "2"), csv.readRecord());
+		assertNull(csv.readRecord());
+	}
+	
+	@Test
+	public void windowsAndOldMacLineEndings() throws IOException {
+		CsvReader csv = reader("a,b\r\n1,2\r3,4");
+		
+		assertEquals(Arrays.asList("a", "b"), csv.readRecord());
+		assertEquals(Arrays.asList("1", "2"), csv.readRecord());
+		assertEquals(Arrays.asList("3", "4"), csv.readRecord());
+		assertNull(csv.readRecord());
+	}
+	
+	@Test
+	public void quotedFields() throws IOException {
+		CsvReader csv = reader("\"Smith, John\",\"say \"\"hi\"\"\",\"two\r\nlines\",\"\"\n");
+		
+		assertEquals(Arrays.asList("Smith, John", "say \"hi\"", "two\r\nlines", ""), csv.readRecord());
+		assertNull(csv.readRecord());
+	}
+	
+	@Test
+	public void quotesInsideAnUnquotedField() throws IOException {
+		assertEquals(Arrays.asList("5\" nail", "x"), reader("5\" nail,x").readRecord());
+	}
+	
+	@Test
+	public void emptyFields() throws IOException {
+		CsvReader csv = reader(",a,\n\n");
+		
+		assertEquals(Arrays.asList("", "a", ""), csv.readRecord());
+		assertEquals(Arrays.asList(""), csv.readRecord());
+		assertNull(csv.readRecord());
+	}
+	
+	@Test
+	public void byteOrderMarkIsSkipped() throws IOException {
+		CsvReader csv = reader("\uFEFFid,name\n\uFEFFx,y\n");
+		
+		assertEquals(Arrays.asList("id", "name"), csv.readRecord());
+		assertEquals(Arrays.asList("\uFEFFx", "y"), csv.readRecord());
+	}
+	
+	@Test
+	public void unterminatedQuote() throws IOException {
+		CsvReader csv = reader("a,\"b\nc");
+		
+		assertEquals(Arrays.asList("a", "b\nc"), csv.readRecord());
+		assertNull(csv.readRecord());
+	}
+	
+	@Test
+	public void emptyInput() throws IOException {
+		assertNull(reader("").readRecord());
+		assertNull(reader("\uFEFF").readRecord());
+	}
+	
+	private static CsvReader reader(final String csv) {
+		return new CsvReader(new StringReader(csv));
+	}
+
+}
@@ -0,0 +1,42 @@
+package org.sakaiproject.gradebookng.business;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class CsvValuesTest {
+	
+	@Test
+	public void formulasAreEscaped() {
+		assertEquals("'=SUM(A1:A2)", CsvValues.escape("=SUM(A1:A2)"));
+		assertEquals("'+1+1", CsvValues.escape("+1+1"));
+		assertEquals("'-cmd", CsvValues.escape("-cmd"));
+		assertEquals("'@user", CsvValues.escape("@user"));
+		assertEquals("'\tx", CsvValues.escape("\tx"));
+	}
+	
+	@Test
+	public void otherValuesAreLeftAlone() {
+		assertEquals("Smith", CsvValues.escape("Smith"));
+		assertEquals("-5", CsvValues.escape("-5"));
+		assertEquals("a=b", CsvValues.escape("a=b"));
+		assertEquals("", CsvValues.escape(""));
+		assertNull(CsvValues.escape(null));
+	}
+	
+	@Test
+	public void unescapeReversesEscape() {
+		for(String value: new String[] { "=1+2", "-cmd", "@user", "Smith", "-5", "'quoted", "'" }) {
+			assertEquals(value, CsvValues.unescape(CsvValues.escape(value)));
+		}
+	}
+	
+	@Test
+	public void unescapeOnlyRemovesQuotesAddedByEscape() {
+		assertEquals("'quoted", CsvValues.unescape("'quoted"));
+		assertEquals("'-5", CsvValues.unescape("'-5"));
+		assertNull(CsvValues.unescape(null));
+	}
+
+}
@@ -0,0 +1,95 @@
+package org.sakaiproject.gradebookng.business;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.sakaiproject.gradebookng.business.dto.GradebookChangeEvent;
+
+public class EventTrackingChangeTransportTest {
+	
+	@Test
+	public void studentsAreListedInTheResource() {
+		GradebookChangeEvent event = new GradebookChangeEvent(GradebookChangeEvent.Type.GRADE, "node1", "site1", Arrays.asList("u1", "u2"));
+		
+		String resource = EventTrackingChangeTransport.format(event);
+		
+		assertEquals("/gradebookng/GRADE/node1/site1/u1,u2", resource);
+		GradebookChangeEvent parsed = EventTrackingChangeTransport.parse(resource);
+		assertEquals(GradebookChangeEvent.Type.GRADE, parsed.getType());
+		assertEquals("node1", parsed.getOrigin());
+		assertEquals("site1", parsed.getGradebookUid());
+		assertEquals(Arrays.asList("u1", "u2"), parsed.getStudentUuids());
+	}
+	
+	@Test
+	public void separatorsInIdsAreEncoded() {
+		GradebookChangeEvent event = new GradebookChangeEvent(GradebookChangeEvent.Type.COURSE_GRADE, "node/1", "site,1", Arrays.asList("u/1", "u,2", "\u00FC 3"));
+		
+		GradebookChangeEvent parsed = EventTrackingChangeTransport.parse(EventTrackingChangeTransport.format(event));
+		
+		assertEquals(GradebookChangeEvent.Type.COURSE_GRADE, parsed.getType());
+		assertEquals("node/1", parsed.getOrigin());
+		assertEquals("site,1", parsed.getGradebookUid());
+		assertEquals(Arrays.asList("u/1", "u,2", "\u00FC 3"), parsed.getStudentUuids());
+	}
+	
+	@Test
+	public void gradebookWideChange() {
+		GradebookChangeEvent event = new GradebookChangeEvent(GradebookChangeEvent.Type.ASSIGNMENT, "node1", "site1", null);
+		
+		String resource = EventTrackingChangeTransport.format(event);
+		
+		assertEquals("/gradebookng/ASSIGNMENT/node1/site1", resource);
+		assertTrue(EventTrackingChangeTransport.parse(resource).isGradebookWide());
+		assertTrue(new GradebookChangeEvent(GradebookChangeEvent.Type.GRADE, "node1", "site1", Collections.<String>emptyList()).isGradebookWide());
+	}
+	
+	@Test
+	public void tooManyStudentsIsAGradebookWideChange() {
+		List<String> students = new ArrayList<String>();
+		for(int i = 0; i < 20; i++) {
+			students.add("00000000-0000-0000-0000-0000000000" + (10 + i));
+		}
+		GradebookChangeEvent event = new GradebookChangeEvent(GradebookChangeEvent.Type.GRADE, "node1", "site1", students);
+		
+		String resource = EventTrackingChangeTransport.format(event);
+		
+		assertTrue(resource.length() <= EventTrackingChangeTransport.MAX_RESOURCE_LENGTH);
+		assertTrue(EventTrackingChangeTransport.parse(resource).isGradebookWide());
+	}
+	
+	@Test
+	public void invalidResources() {
+		assertNull(EventTrackingChangeTransport.parse(null));
+		assertNull(EventTrackingChangeTransport.parse("/site/site1"));
+		assertNull(EventTrackingChangeTransport.parse("/gradebookng/GRADE/node1"));
+		assertNull(EventTrackingChangeTransport.parse("/gradebookng/UNKNOWN/node1/site1"));
+	}
+	
+	@Test
+	public void missingOrigin() {
+		GradebookChangeEvent parsed = EventTrackingChangeTransport.parse("/gradebookng/GRADE//site1/u1");
+		
+		assertNull(parsed.getOrigin());
+		assertEquals("site1", parsed.getGradebookUid());
+		assertEquals(Arrays.asList("u1"), parsed.getStudentUuids());
+	}
+	
+	@Test
+	public void siteIdFromMembershipEvents() {
+		assertEquals("site1", EventTrackingChangeTransport.getSiteId("/site/site1"));
+		assertEquals("site1", EventTrackingChangeTransport.getSiteId("/realm//site/site1"));
+		assertEquals("site1", EventTrackingChangeTransport.getSiteId("/realm//site/site1/group/group1"));
+		assertNull(EventTrackingChangeTransport.getSiteId("/realm//site/"));
+		assertNull(EventTrackingChangeTransport.getSiteId("/user/user1"));
+		assertNull(EventTrackingChangeTransport.getSiteId(null));
+	}
+
+}
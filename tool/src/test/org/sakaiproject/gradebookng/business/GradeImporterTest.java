@@ -0,0 +1,217 @@
+package org.sakaiproject.gradebookng.business;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.gradebookng.business.dto.GradeImportReport;
+import org.sakaiproject.gradebookng.business.dto.GradeSaveResult;
+import org.sakaiproject.gradebookng.business.dto.GradeUpdate;
+import org.sakaiproject.gradebookng.tool.model.AssignmentIndex;
+import org.sakaiproject.gradebookng.tool.model.GradeInfo;
+import org.sakaiproject.gradebookng.tool.model.StudentGrades;
+import org.sakaiproject.service.gradebook.shared.Assignment;
+
+public class GradeImporterTest {
+	
+	private StubBusinessService businessService;
+	private GradeImporter importer;
+	
+	@Before
+	public void setUp() {
+		this.businessService = new StubBusinessService();
+		this.importer = new GradeImporter();
+		this.importer.setBusinessService(this.businessService);
+		this.importer.setChunkSize(2);
+	}
+	
+	@Test
+	public void processedInChunks() throws IOException {
+		GradeImportReport report = this.importer.commit(csv(
+				"Student ID,Quiz 1",
+				"eid0,1",
+				"eid1,2",
+				"eid2,3",
+				"eid3,4",
+				"eid4,5"));
+		
+		assertEquals(Arrays.asList(2, 2, 1), this.businessService.lookups);
+		assertEquals(3, this.businessService.saves.size());
+		assertEquals(Arrays.asList("uuid0=1", "uuid1=2"), this.businessService.saves.get(0));
+		assertEquals(Arrays.asList("uuid4=5"), this.businessService.saves.get(2));
+		assertEquals(5, report.getRows());
+		assertEquals(5, report.getChanged());
+		assertEquals(5, report.getSaved());
+	}
+	
+	@Test
+	public void previewSavesNothing() throws IOException {
+		GradeImportReport report = this.importer.preview(csv(
+				"Student ID,Quiz 1",
+				"eid0,1",
+				"eid1,2",
+				"eid2,3"));
+		
+		assertTrue(this.businessService.saves.isEmpty());
+		assertEquals(3, report.getChanged());
+		assertEquals(0, report.getSaved());
+	}
+	
+	@Test
+	public void columnsMatchedByNameIgnoringCase() throws IOException {
+		GradeImportReport report = this.importer.preview(csv(
+				"Student ID,quiz 1, Quiz 2 ,Notes",
+				"eid0,1,2,x"));
+		
+		assertEquals(Arrays.asList("quiz 1", "Quiz 2"), report.getMatchedColumns());
+		assertEquals(Arrays.asList("Notes"), report.getIgnoredColumns());
+		assertEquals(2, report.getChanged());
+	}
+	
+	@Test
+	public void studentsMatchedIgnoringCaseAndSpace() throws IOException {
+		GradeImportReport report = this.importer.preview(csv(
+				"Student ID,Quiz 1",
+				" EID0 ,1",
+				"nobody,2",
+				",3"));
+		
+		assertEquals(1, report.getRows());
+		assertEquals(1, report.getUnknownStudents());
+		assertEquals(Arrays.asList("nobody"), report.getSampleUnknownStudents());
+	}
+	
+	@Test
+	public void unchangedBlankAndInvalidCells() throws IOException {
+		this.businessService.grade("eid0", 1L, "80", "well done");
+		
+		GradeImportReport report = this.importer.commit(csv(
+				"Student ID,Quiz 1,Quiz 2",
+				"eid0,80.0,",
+				"eid1,x,x",
+				"eid2,90,"));
+		
+		assertEquals(1, report.getUnchanged());
+		assertEquals(2, report.getInvalid());
+		assertEquals(1, report.getChanged());
+		assertEquals(2, this.businessService.validated);
+		assertEquals(Arrays.asList("uuid2=90"), this.businessService.saves.get(0));
+	}
+	
+	@Test
+	public void commentsAreKept() throws IOException {
+		this.businessService.grade("eid0", 1L, "80", "well done");
+		
+		this.importer.commit(csv(
+				"Student ID,Quiz 1",
+				"eid0,85"));
+		
+		assertEquals("well done", this.businessService.updates.get(0).getComment());
+	}
+	
+	@Test
+	public void escapedValuesFromTheExport() throws IOException {
+		GradeImportReport report = this.importer.preview(csv(
+				"Student ID,'=Quiz 1",
+				"eid0,'+A"));
+		
+		assertEquals(Arrays.asList("=Quiz 1"), report.getIgnoredColumns());
+		
+		report = this.importer.preview(csv(
+				"Student ID,Quiz 1",
+				"eid0,'+A"));
+		
+		assertEquals(1, report.getInvalid());
+		assertEquals("+A", report.getSampleInvalid().get(0).getNewGrade());
+	}
+	
+	private static StringReader csv(final String... lines) {
+		StringBuilder sb = new StringBuilder();
+		for(String line: lines) {
+			sb.append(line).append("\r\n");
+		}
+		return new StringReader(sb.toString());
+	}
+	
+	
+	/**
+	 * A gradebook of two quizzes and five students, recording the lookups and saves made by the importer
+	 */
+	private static class StubBusinessService extends GradebookNgBusinessService {
+		
+		private final List<Assignment> assignments = Arrays.asList(GradeMatrixFixture.assignment(1L, "Quiz 1"), GradeMatrixFixture.assignment(2L, "Quiz 2"));
+		private final List<StudentGrades> rows = new ArrayList<StudentGrades>();
+		
+		private final List<Integer> lookups = new ArrayList<Integer>();
+		private final List<List<String>> saves = new ArrayList<List<String>>();
+		private final List<GradeUpdate> updates = new ArrayList<GradeUpdate>();
+		private int validated;
+		
+		StubBusinessService() {
+			AssignmentIndex index = new AssignmentIndex(this.assignments);
+			for(int i = 0; i < 5; i++) {
+				this.rows.add(new StudentGrades(GradeMatrixFixture.student("uuid" + i, "eid" + i, "First" + i, "Last" + i), index));
+			}
+		}
+		
+		void grade(final String eid, final Long assignmentId, final String grade, final String comment) {
+			for(StudentGrades row: this.rows) {
+				if(row.getStudentEid().equals(eid)) {
+					row.addGrade(assignmentId, new GradeInfo(grade, comment));
+				}
+			}
+		}
+		
+		@Override
+		public List<Assignment> getGradebookAssignments() {
+			return this.assignments;
+		}
+		
+		@Override
+		public List<StudentGrades> getStudentGradesByEid(final Collection<String> studentEids) {
+			this.lookups.add(studentEids.size());
+			List<StudentGrades> rval = new ArrayList<StudentGrades>();
+			for(String eid: studentEids) {
+				for(StudentGrades row: this.rows) {
+					if(row.getStudentEid().equalsIgnoreCase(eid)) {
+						rval.add(row);
+					}
+				}
+			}
+			return rval;
+		}
+		
+		@Override
+		public boolean isGradeValid(final String grade) {
+			this.validated++;
+			try {
+				Double.parseDouble(grade);
+				return true;
+			} catch (NumberFormatException e) {
+				return false;
+			}
+		}
+		
+		@Override
+		public GradeSaveResult saveGrades(final List<GradeUpdate> updates) {
+			List<String> cells = new ArrayList<String>();
+			GradeSaveResult result = new GradeSaveResult();
+			for(GradeUpdate update: updates) {
+				cells.add(update.getStudentUuid() + "=" + update.getGrade());
+				result.addSaved(update);
+			}
+			this.saves.add(cells);
+			this.updates.addAll(updates);
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+package org.sakaiproject.gradebookng.business;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class GradeMatrixCacheTest {
+	
+	private GradeMatrixCache cache;
+	
+	@Before
+	public void setUp() {
+		this.cache = new GradeMatrixCache();
+		//ten students and four assignments, ie 50 cells a site
+		this.cache.setMaxCells(100);
+	}
+	
+	@Test
+	public void getCountsHitsAndMisses() {
+		GradeMatrix matrix = GradeMatrixFixture.matrix("a", 10, 4);
+		this.cache.put(matrix);
+		
+		assertSame(matrix, this.cache.get("a"));
+		assertNull(this.cache.get("b"));
+		assertEquals(1, this.cache.getHits());
+		assertEquals(1, this.cache.getMisses());
+		assertEquals(50, this.cache.getCells());
+	}
+	
+	@Test
+	public void evictsTheLeastRecentlyUsed() {
+		this.cache.put(GradeMatrixFixture.matrix("a", 10, 4));
+		this.cache.put(GradeMatrixFixture.matrix("b", 10, 4));
+		this.cache.get("a");
+		
+		this.cache.put(GradeMatrixFixture.matrix("c", 10, 4));
+		
+		assertNotNull(this.cache.peek("a"));
+		assertNull(this.cache.peek("b"));
+		assertNotNull(this.cache.peek("c"));
+		assertEquals(1, this.cache.getEvictions());
+		assertEquals(100, this.cache.getCells());
+	}
+	
+	@Test
+	public void peekDoesNotChangeTheEvictionOrder() {
+		this.cache.put(GradeMatrixFixture.matrix("a", 10, 4));
+		this.cache.put(GradeMatrixFixture.matrix("b", 10, 4));
+		this.cache.peek("a");
+		
+		this.cache.put(GradeMatrixFixture.matrix("c", 10, 4));
+		
+		assertNull(this.cache.peek("a"));
+		assertNotNull(this.cache.peek("b"));
+		assertEquals(0, this.cache.getHits());
+	}
+	
+	@Test
+	public void replacingAnEntryKeepsTheCellCount() {
+		this.cache.put(GradeMatrixFixture.matrix("a", 10, 4));
+		this.cache.put(GradeMatrixFixture.matrix("a", 5, 4));
+		
+		assertEquals(1, this.cache.getSize());
+		assertEquals(25, this.cache.getCells());
+	}
+	
+	@Test
+	public void tooLargeToCache() {
+		this.cache.put(GradeMatrixFixture.matrix("a", 30, 4));
+		
+		assertEquals(0, this.cache.getSize());
+		assertEquals(0, this.cache.getCells());
+	}
+	
+	@Test
+	public void expiredEntriesAreDropped() {
+		this.cache.setTimeToLive(-1);
+		this.cache.put(GradeMatrixFixture.matrix("a", 10, 4));
+		
+		assertNull(this.cache.get("a"));
+		assertNull(this.cache.peek("a"));
+		assertEquals(1, this.cache.getExpirations());
+		assertEquals(0, this.cache.getCells());
+	}
+	
+	@Test
+	public void markStaleDropsMatricesWithoutTheStudent() {
+		this.cache.put(GradeMatrixFixture.matrix("a", 10, 4));
+		
+		this.cache.markStale("a", "uuid3");
+		assertTrue(this.cache.peek("a").takeStaleStudents().contains("uuid3"));
+		
+		this.cache.markStale("a", "someone-new");
+		assertNull(this.cache.peek("a"));
+	}
+	
+	@Test
+	public void invalidateGradebook() {
+		this.cache.put(GradeMatrixFixture.matrix("a", 10, 4));
+		this.cache.put(GradeMatrixFixture.matrix("b", 10, 4));
+		
+		this.cache.invalidateGradebook("a");
+		
+		assertNull(this.cache.peek("a"));
+		assertNotNull(this.cache.peek("b"));
+		assertEquals(50, this.cache.getCells());
+		
+		this.cache.clear();
+		assertEquals(0, this.cache.getSize());
+		assertEquals(0, this.cache.getCells());
+	}
+
+}
@@ -0,0 +1,79 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sakaiproject.gradebookng.business.dto.RosterEntry;
+import org.sakaiproject.gradebookng.tool.model.AssignmentIndex;
+import org.sakaiproject.gradebookng.tool.model.GradeInfo;
+import org.sakaiproject.gradebookng.tool.model.StudentGrades;
+import org.sakaiproject.service.gradebook.shared.Assignment;
+
+/**
+ * Builds small grade matrices for tests
+ *
+ */
+final class GradeMatrixFixture {
+	
+	private GradeMatrixFixture() {
+	}
+	
+	static Assignment assignment(final long id, final String name) {
+		Assignment assignment = new Assignment();
+		assignment.setId(id);
+		assignment.setName(name);
+		assignment.setPoints(100.0);
+		return assignment;
+	}
+	
+	static List<Assignment> assignments(final long... ids) {
+		List<Assignment> assignments = new ArrayList<Assignment>();
+		for(long id: ids) {
+			assignments.add(assignment(id, "Assignment " + id));
+		}
+		return assignments;
+	}
+	
+	static RosterEntry student(final String id, final String eid, final String firstName, final String lastName) {
+		return new RosterEntry(id, eid, firstName + " " + lastName, firstName, lastName);
+	}
+	
+	/**
+	 * A row with the given grades, in the order of the assignments
+	 */
+	static StudentGrades row(final RosterEntry student, final AssignmentIndex index, final List<Assignment> assignments, final String... grades) {
+		StudentGrades row = new StudentGrades(student, index);
+		for(int i = 0; i < grades.length; i++) {
+			row.addGrade(assignments.get(i).getId(), new GradeInfo(grades[i], null));
+		}
+		return row;
+	}
+	
+	/**
+	 * A matrix of the given students with no grades
+	 */
+	static GradeMatrix matrix(final String siteId, final List<Assignment> assignments, final RosterEntry... students) {
+		AssignmentIndex index = new AssignmentIndex(assignments);
+		List<StudentGrades> rows = new ArrayList<StudentGrades>();
+		for(RosterEntry student: students) {
+			rows.add(new StudentGrades(student, index));
+		}
+		return new GradeMatrix(siteId, siteId, assignments, index, rows);
+	}
+	
+	/**
+	 * A matrix with the given number of students and assignments
+	 */
+	static GradeMatrix matrix(final String siteId, final int studentCount, final int assignmentCount) {
+		long[] ids = new long[assignmentCount];
+		for(int i = 0; i < assignmentCount; i++) {
+			ids[i] = i + 1;
+		}
+		RosterEntry[] students = new RosterEntry[studentCount];
+		for(int i = 0; i < studentCount; i++) {
+			students[i] = student("uuid" + i, "eid" + i, "First" + i, "Last" + i);
+		}
+		return matrix(siteId, assignments(ids), students);
+	}
+
+}
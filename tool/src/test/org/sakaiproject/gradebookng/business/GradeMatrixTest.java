@@ -0,0 +1,222 @@
+package org.sakaiproject.gradebookng.business;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.gradebookng.business.dto.AssignmentStatistics;
+import org.sakaiproject.gradebookng.business.dto.RosterEntry;
+import org.sakaiproject.gradebookng.tool.model.AssignmentIndex;
+import org.sakaiproject.gradebookng.tool.model.GradeInfo;
+import org.sakaiproject.gradebookng.tool.model.StudentGrades;
+import org.sakaiproject.service.gradebook.shared.Assignment;
+
+public class GradeMatrixTest {
+	
+	private static final Long A1 = 1L;
+	private static final Long A2 = 2L;
+	
+	private List<Assignment> assignments;
+	private AssignmentIndex index;
+	private GradeMatrix matrix;
+	
+	@Before
+	public void setUp() {
+		this.assignments = GradeMatrixFixture.assignments(A1, A2);
+		this.index = new AssignmentIndex(this.assignments);
+		
+		List<StudentGrades> rows = new ArrayList<StudentGrades>();
+		rows.add(GradeMatrixFixture.row(GradeMatrixFixture.student("u1", "jsmith", "John", "Smith"), this.index, this.assignments, "80", "B"));
+		rows.add(GradeMatrixFixture.row(GradeMatrixFixture.student("u2", "ajones", "Anna", "Jones"), this.index, this.assignments, "95", null));
+		rows.add(GradeMatrixFixture.row(GradeMatrixFixture.student("u3", "bbrown", "Bob", "Brown"), this.index, this.assignments, null, "A"));
+		rows.add(GradeMatrixFixture.row(GradeMatrixFixture.student("u4", "cadams", "Cara", "Adams"), this.index, this.assignments, "70", "75"));
+		this.matrix = new GradeMatrix("site", "site", this.assignments, this.index, rows);
+	}
+	
+	@Test
+	public void updateCopiesTheRow() {
+		StudentGrades before = this.matrix.getStudentGrades("u1");
+		
+		assertTrue(this.matrix.updateGrade("u1", A1, new GradeInfo("90", "better")));
+		
+		StudentGrades after = this.matrix.getStudentGrades("u1");
+		assertNotSame(before, after);
+		assertEquals("80", before.getGrade(A1).getGrade());
+		assertNull(before.getGrade(A1).getGradeComment());
+		assertEquals("90", after.getGrade(A1).getGrade());
+		assertEquals("better", after.getGrade(A1).getGradeComment());
+		assertEquals("B", after.getGrade(A2).getGrade());
+	}
+	
+	@Test
+	public void snapshotsAreNotChangedByUpdates() {
+		List<StudentGrades> snapshot = this.matrix.getStudentGrades();
+		
+		this.matrix.updateGrade("u2", A1, new GradeInfo("10", null));
+		this.matrix.updateCourseGrade("u2", "F");
+		
+		assertEquals("95", snapshot.get(1).getGrade(A1).getGrade());
+		assertNull(snapshot.get(1).getCourseGrade());
+		assertEquals("F", this.matrix.getStudentGrades("u2").getCourseGrade());
+	}
+	
+	@Test
+	public void updatesForUnknownCellsAreRejected() {
+		assertFalse(this.matrix.updateGrade("nobody", A1, new GradeInfo("1", null)));
+		assertFalse(this.matrix.updateGrade("u1", 99L, new GradeInfo("1", null)));
+		assertFalse(this.matrix.updateCourseGrade("nobody", "A"));
+	}
+	
+	@Test
+	public void replacingARowNeedsTheSameAssignments() {
+		RosterEntry student = GradeMatrixFixture.student("u1", "jsmith", "John", "Smith");
+		
+		assertFalse(this.matrix.replaceStudentGrades(GradeMatrixFixture.row(student, new AssignmentIndex(this.assignments), this.assignments, "1", "2")));
+		assertTrue(this.matrix.replaceStudentGrades(GradeMatrixFixture.row(student, this.index, this.assignments, "1", "2")));
+		assertEquals("1", this.matrix.getStudentGrades("u1").getGrade(A1).getGrade());
+	}
+	
+	@Test
+	public void windowsInRosterOrder() {
+		assertEquals(Arrays.asList("u2", "u3"), uuids(this.matrix.getStudentGrades(1, 2)));
+		assertEquals(Arrays.asList("u4"), uuids(this.matrix.getStudentGrades(3, 10)));
+		assertTrue(this.matrix.getStudentGrades(4, 10).isEmpty());
+	}
+	
+	@Test
+	public void sortsByStudent() {
+		assertEquals(Arrays.asList("u4", "u3", "u2", "u1"), sorted(MatrixSort.byStudent(SortOrder.LAST_NAME, true)));
+		assertEquals(Arrays.asList("u1", "u2", "u3", "u4"), sorted(MatrixSort.byStudent(SortOrder.LAST_NAME, false)));
+		assertEquals(Arrays.asList("u2", "u3", "u4", "u1"), sorted(MatrixSort.byStudent(SortOrder.FIRST_NAME, true)));
+		assertEquals(Arrays.asList("u2", "u3", "u4", "u1"), sorted(MatrixSort.byStudent(SortOrder.USER_ID, true)));
+	}
+	
+	@Test
+	public void sortsGradesAsNumbersWithMissingGradesLast() {
+		assertEquals(Arrays.asList("u4", "u1", "u2", "u3"), sorted(MatrixSort.byAssignment(A1, true)));
+		assertEquals(Arrays.asList("u2", "u1", "u4", "u3"), sorted(MatrixSort.byAssignment(A1, false)));
+	}
+	
+	@Test
+	public void sortsNumbersBeforeOtherGrades() {
+		assertEquals(Arrays.asList("u4", "u3", "u1", "u2"), sorted(MatrixSort.byAssignment(A2, true)));
+	}
+	
+	@Test
+	public void sortIsRedoneWhenAGradeChanges() {
+		assertEquals(Arrays.asList("u4", "u1", "u2", "u3"), sorted(MatrixSort.byAssignment(A1, true)));
+		
+		this.matrix.updateGrade("u2", A1, new GradeInfo("5", null));
+		
+		assertEquals(Arrays.asList("u2", "u4", "u1", "u3"), sorted(MatrixSort.byAssignment(A1, true)));
+	}
+	
+	@Test
+	public void sortIsRedoneWhenTheCourseGradesChange() {
+		Map<String,String> courseGrades = new HashMap<String,String>();
+		courseGrades.put("u1", "B");
+		courseGrades.put("u2", "A");
+		this.matrix.updateCourseGrades(courseGrades);
+		assertEquals(Arrays.asList("u2", "u1", "u3", "u4"), sorted(MatrixSort.byCourseGrade(true)));
+		
+		this.matrix.updateCourseGrade("u4", "A");
+		
+		assertEquals(Arrays.asList("u2", "u4", "u1", "u3"), sorted(MatrixSort.byCourseGrade(true)));
+	}
+	
+	@Test
+	public void searchesWithinTheSortedRows() {
+		List<StudentGrades> rows = this.matrix.getStudentGrades(0, 10, MatrixSort.byStudent(SortOrder.LAST_NAME, true), Locale.ENGLISH, "j");
+		
+		assertEquals(Arrays.asList("u2", "u1"), uuids(rows));
+		assertEquals(Arrays.asList("u1"), uuids(this.matrix.getStudentGrades(1, 10, MatrixSort.byStudent(SortOrder.LAST_NAME, true), Locale.ENGLISH, "j")));
+		assertEquals(2, this.matrix.getStudentCount("j"));
+		assertEquals(4, this.matrix.getStudentCount(" "));
+	}
+	
+	@Test
+	public void staleStudentsAreTakenOnce() {
+		assertTrue(this.matrix.markStale("u1"));
+		assertFalse(this.matrix.markStale("nobody"));
+		this.matrix.markCourseGradesStale();
+		
+		assertEquals(1, this.matrix.takeStaleStudents().size());
+		assertTrue(this.matrix.takeStaleStudents().isEmpty());
+		assertTrue(this.matrix.takeCourseGradesStale());
+		assertFalse(this.matrix.takeCourseGradesStale());
+	}
+	
+	@Test
+	public void versionOnlyAdvancesFromTheCurrentVersion() {
+		this.matrix.setGradebookVersion(5);
+		
+		assertFalse(this.matrix.advanceGradebookVersion(4, 6));
+		assertEquals(5, this.matrix.getGradebookVersion());
+		assertTrue(this.matrix.advanceGradebookVersion(5, 6));
+		assertEquals(6, this.matrix.getGradebookVersion());
+	}
+	
+	@Test
+	public void statisticsFollowUpdates() {
+		AssignmentStatistics statistics = this.matrix.getAssignmentStatistics(A1);
+		assertEquals(3, statistics.getCount());
+		assertEquals(81.67, statistics.getMean(), 0.01);
+		
+		this.matrix.updateGrade("u3", A1, new GradeInfo("100", null));
+		
+		statistics = this.matrix.getAssignmentStatistics(A1);
+		assertEquals(4, statistics.getCount());
+		assertEquals(86.25, statistics.getMean(), 0.01);
+		assertEquals(100.0, statistics.getMax(), 0.0);
+	}
+	
+	@Test
+	public void staleCourseGradesAreTakenOnce() {
+		assertTrue(this.matrix.markCourseGradeStale("u1"));
+		assertTrue(this.matrix.markCourseGradeStale("u2"));
+		assertFalse(this.matrix.markCourseGradeStale("nobody"));
+		
+		assertEquals(new HashSet<String>(Arrays.asList("u1", "u2")), this.matrix.takeStaleCourseGrades());
+		assertTrue(this.matrix.takeStaleCourseGrades().isEmpty());
+	}
+	
+	@Test
+	public void recalculatingEveryCourseGradeClearsTheStaleOnes() {
+		this.matrix.markCourseGradeStale("u1");
+		this.matrix.updateCourseGrades(new HashMap<String,String>());
+		
+		assertTrue(this.matrix.takeStaleCourseGrades().isEmpty());
+	}
+	
+	@Test
+	public void cellCountIncludesTheCourseGrade() {
+		assertEquals(12, this.matrix.getCellCount());
+		assertSame(this.index, this.matrix.getStudentGrades("u1").getAssignmentIndex());
+	}
+	
+	private List<String> sorted(final MatrixSort sort) {
+		return uuids(this.matrix.getStudentGrades(0, 10, sort, Locale.ENGLISH, null));
+	}
+	
+	private static List<String> uuids(final List<StudentGrades> rows) {
+		List<String> uuids = new ArrayList<String>();
+		for(StudentGrades row: rows) {
+			uuids.add(row.getStudentUuid());
+		}
+		return uuids;
+	}
+
+}
@@ -0,0 +1,331 @@
+package org.sakaiproject.gradebookng.business;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.gradebookng.business.dto.GradeSaveResult;
+import org.sakaiproject.gradebookng.business.dto.GradeUpdate;
+import org.sakaiproject.gradebookng.business.dto.GradeWriteStatus;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
+
+public class GradeWriteQueueTest {
+	
+	private static final String SITE = "site";
+	
+	private GradeWriteQueue queue;
+	private StubBusinessService businessService;
+	private StubSessions sessions;
+	
+	@Before
+	public void setUp() {
+		this.businessService = new StubBusinessService();
+		this.sessions = new StubSessions();
+		this.sessions.current = this.sessions.session("s1");
+		
+		this.queue = new GradeWriteQueue();
+		this.queue.setBusinessService(this.businessService);
+		this.queue.setSessionManager(this.sessions.sessionManager());
+		this.queue.setThreadLocalManager(noop(ThreadLocalManager.class));
+		this.queue.setMaxRetries(2);
+	}
+	
+	@Test
+	public void latestEditForACellWinsInTheOrderFirstMade() {
+		this.queue.add(SITE, update(1L, "u1", "1"));
+		this.queue.add(SITE, update(1L, "u2", "2"));
+		this.queue.add(SITE, update(1L, "u1", "3"));
+		assertEquals(2, this.queue.getStatus(SITE).getPending());
+		
+		this.queue.flush();
+		
+		assertEquals(1, this.businessService.saves.size());
+		assertEquals(Arrays.asList("u1=3", "u2=2"), this.businessService.saves.get(0));
+		assertTrue(this.queue.getStatus(SITE).isDurable());
+	}
+	
+	@Test
+	public void writtenInChunks() {
+		this.queue.setBatchSize(2);
+		this.queue.add(SITE, update(1L, "u1", "1"));
+		this.queue.add(SITE, update(1L, "u2", "2"));
+		this.queue.add(SITE, update(1L, "u3", "3"));
+		
+		this.queue.flush();
+		
+		assertEquals(Arrays.asList("u1=1", "u2=2"), this.businessService.saves.get(0));
+		assertEquals(Arrays.asList("u3=3"), this.businessService.saves.get(1));
+	}
+	
+	@Test
+	public void writtenAsTheSessionThatMadeTheEdit() {
+		Session s1 = this.sessions.current;
+		this.queue.add(SITE, update(1L, "u1", "1"));
+		Session s2 = this.sessions.session("s2");
+		this.sessions.current = s2;
+		this.queue.add(SITE, update(1L, "u2", "2"));
+		
+		this.queue.flush();
+		
+		assertEquals(Arrays.asList("u1=1"), this.businessService.saves.get(0));
+		assertSame(s1, this.businessService.savedAs.get(0));
+		assertEquals(Arrays.asList("u2=2"), this.businessService.saves.get(1));
+		assertSame(s2, this.businessService.savedAs.get(1));
+	}
+	
+	@Test
+	public void errorsAreRetriedThenGivenUpOn() {
+		this.businessService.failure = GradeSaveResult.Failure.ERROR;
+		GradeUpdate update = update(1L, "u1", "1");
+		this.queue.add(SITE, update);
+		
+		this.queue.flush();
+		this.queue.flush();
+		assertEquals(1, this.queue.getStatus(SITE).getPending());
+		assertTrue(this.businessService.givenUp.isEmpty());
+		
+		this.queue.flush();
+		
+		assertEquals(3, this.businessService.saves.size());
+		GradeWriteStatus status = this.queue.getStatus(SITE);
+		assertEquals(0, status.getPending());
+		assertEquals(GradeSaveResult.Failure.ERROR, status.getFailed().get(update));
+		assertEquals(Arrays.asList(update), this.businessService.givenUp);
+	}
+	
+	@Test
+	public void exceptionsAreRetried() {
+		this.businessService.exception = new IllegalStateException("database unavailable");
+		this.queue.add(SITE, update(1L, "u1", "1"));
+		
+		this.queue.flush();
+		
+		assertEquals(1, this.queue.getStatus(SITE).getPending());
+		this.businessService.exception = null;
+		this.queue.flush();
+		assertTrue(this.queue.getStatus(SITE).isDurable());
+	}
+	
+	@Test
+	public void invalidGradesAreNotRetried() {
+		this.businessService.failure = GradeSaveResult.Failure.INVALID_GRADE;
+		GradeUpdate update = update(1L, "u1", "x");
+		this.queue.add(SITE, update);
+		
+		this.queue.flush();
+		
+		assertEquals(1, this.businessService.saves.size());
+		assertEquals(GradeSaveResult.Failure.INVALID_GRADE, this.queue.getStatus(SITE).getFailed().get(update));
+		assertEquals(Arrays.asList(update), this.businessService.givenUp);
+	}
+	
+	@Test
+	public void newerEditClearsAFailure() {
+		this.businessService.failure = GradeSaveResult.Failure.INVALID_GRADE;
+		this.queue.add(SITE, update(1L, "u1", "x"));
+		this.queue.flush();
+		
+		this.queue.add(SITE, update(1L, "u1", "1"));
+		
+		GradeWriteStatus status = this.queue.getStatus(SITE);
+		assertTrue(status.getFailed().isEmpty());
+		assertEquals(1, status.getPending());
+	}
+	
+	@Test
+	public void retryDoesNotReplaceANewerEdit() {
+		this.businessService.failure = GradeSaveResult.Failure.ERROR;
+		this.businessService.duringSave = new Runnable() {
+			@Override
+			public void run() {
+				//the user edits the cell again while the first edit is being written
+				queue.add(SITE, update(1L, "u1", "2"));
+			}
+		};
+		this.queue.add(SITE, update(1L, "u1", "1"));
+		
+		this.queue.flush();
+		this.businessService.failure = null;
+		this.businessService.duringSave = null;
+		this.queue.flush();
+		
+		assertEquals(Arrays.asList("u1=2"), this.businessService.saves.get(1));
+		assertTrue(this.queue.getStatus(SITE).isDurable());
+	}
+	
+	@Test
+	public void twoSessionsEditingOneCell() {
+		this.queue.add(SITE, update(1L, "u1", "1"));
+		Session s2 = this.sessions.session("s2");
+		this.sessions.current = s2;
+		this.queue.add(SITE, update(1L, "u1", "2"));
+		
+		this.queue.flush();
+		
+		assertEquals(1, this.businessService.saves.size());
+		assertEquals(Arrays.asList("u1=2"), this.businessService.saves.get(0));
+		assertSame(s2, this.businessService.savedAs.get(0));
+	}
+	
+	@Test
+	public void retryDoesNotReplaceANewerEditFromAnotherSession() {
+		final Session s2 = this.sessions.session("s2");
+		this.businessService.failure = GradeSaveResult.Failure.ERROR;
+		this.businessService.duringSave = new Runnable() {
+			@Override
+			public void run() {
+				//another user edits the cell while the first edit is being written
+				sessions.current = s2;
+				queue.add(SITE, update(1L, "u1", "2"));
+			}
+		};
+		this.queue.add(SITE, update(1L, "u1", "1"));
+		
+		this.queue.flush();
+		this.businessService.failure = null;
+		this.businessService.duringSave = null;
+		this.queue.flush();
+		
+		assertEquals(2, this.businessService.saves.size());
+		assertEquals(Arrays.asList("u1=2"), this.businessService.saves.get(1));
+		assertSame(s2, this.businessService.savedAs.get(1));
+		assertTrue(this.queue.getStatus(SITE).isDurable());
+	}
+	
+	@Test
+	public void destroyWritesWhatIsPendingWithoutAWorker() {
+		//not enabled, so init does not start the worker
+		this.queue.init();
+		this.queue.add(SITE, update(1L, "u1", "1"));
+		
+		this.queue.destroy();
+		
+		assertEquals(Arrays.asList("u1=1"), this.businessService.saves.get(0));
+		assertTrue(this.queue.getStatus(SITE).isDurable());
+	}
+	
+	@Test
+	public void sitesAreReportedSeparately() {
+		this.queue.add(SITE, update(1L, "u1", "1"));
+		this.queue.add("other", update(1L, "u1", "1"));
+		this.queue.add("other", update(2L, "u1", "1"));
+		
+		assertEquals(1, this.queue.getStatus(SITE).getPending());
+		assertEquals(2, this.queue.getStatus("other").getPending());
+		assertFalse(this.queue.getStatus("other").isDurable());
+	}
+	
+	private static GradeUpdate update(final Long assignmentId, final String studentUuid, final String grade) {
+		return new GradeUpdate(assignmentId, studentUuid, grade, null);
+	}
+	
+	/**
+	 * An implementation of an interface that does nothing
+	 */
+	private static <T> T noop(final Class<T> type) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				return null;
+			}
+		}));
+	}
+	
+	
+	/**
+	 * Records the batches written, and fails them as set up
+	 */
+	private class StubBusinessService extends GradebookNgBusinessService {
+		
+		private final List<List<String>> saves = new ArrayList<List<String>>();
+		private final List<Session> savedAs = new ArrayList<Session>();
+		private final List<GradeUpdate> givenUp = new ArrayList<GradeUpdate>();
+		
+		private GradeSaveResult.Failure failure;
+		private RuntimeException exception;
+		private Runnable duringSave;
+		
+		@Override
+		GradeSaveResult saveGrades(final String siteId, final List<GradeUpdate> updates) {
+			List<String> cells = new ArrayList<String>();
+			for(GradeUpdate update: updates) {
+				cells.add(update.getStudentUuid() + "=" + update.getGrade());
+			}
+			this.saves.add(cells);
+			this.savedAs.add(GradeWriteQueueTest.this.sessions.current);
+			
+			if(this.duringSave != null) {
+				this.duringSave.run();
+			}
+			if(this.exception != null) {
+				throw this.exception;
+			}
+			GradeSaveResult result = new GradeSaveResult();
+			for(GradeUpdate update: updates) {
+				if(this.failure != null) {
+					result.addFailed(update, this.failure);
+				} else {
+					result.addSaved(update);
+				}
+			}
+			return result;
+		}
+		
+		@Override
+		void queuedGradesFailed(final String siteId, final Collection<GradeUpdate> updates) {
+			this.givenUp.addAll(updates);
+		}
+	}
+	
+	/**
+	 * Sessions with an id, and a session manager that holds the current one
+	 */
+	private static class StubSessions {
+		
+		private Session current;
+		
+		Session session(final String id) {
+			return (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[] { Session.class }, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					if(method.getName().equals("getId")) {
+						return id;
+					}
+					if(method.getName().equals("toString")) {
+						return id;
+					}
+					return null;
+				}
+			});
+		}
+		
+		SessionManager sessionManager() {
+			return (SessionManager) Proxy.newProxyInstance(SessionManager.class.getClassLoader(), new Class<?>[] { SessionManager.class }, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					if(method.getName().equals("getCurrentSession")) {
+						return current;
+					}
+					if(method.getName().equals("setCurrentSession")) {
+						current = (Session) args[0];
+					}
+					return null;
+				}
+			});
+		}
+	}
+
+}
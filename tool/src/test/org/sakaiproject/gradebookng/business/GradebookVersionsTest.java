@@ -0,0 +1,64 @@
+package org.sakaiproject.gradebookng.business;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class GradebookVersionsTest {
+	
+	@Test
+	public void versionsStartFromTheCurrentTime() {
+		long before = System.currentTimeMillis();
+		
+		long version = new GradebookVersions().getVersion("a");
+		
+		assertTrue(version >= before);
+		assertTrue(version <= System.currentTimeMillis());
+	}
+	
+	@Test
+	public void bumpMovesOnlyThatGradebookOn() {
+		GradebookVersions versions = new GradebookVersions();
+		long a = versions.getVersion("a");
+		long b = versions.getVersion("b");
+		
+		assertEquals(a + 1, versions.bump("a"));
+		assertEquals(a + 2, versions.bump("a"));
+		
+		assertEquals(a + 2, versions.getVersion("a"));
+		assertEquals(b, versions.getVersion("b"));
+		assertEquals(2, versions.getSize());
+	}
+	
+	@Test
+	public void nodesHaveDifferentIds() {
+		assertFalse(new GradebookVersions().getNodeId().equals(new GradebookVersions().getNodeId()));
+	}
+	
+	@Test
+	public void unusedGradebooksAreDropped() {
+		GradebookVersions versions = new GradebookVersions();
+		versions.setTimeToLive(-1);
+		versions.bump("a");
+		versions.bump("b");
+		
+		versions.getVersion("c");
+		
+		assertEquals(1, versions.getSize());
+	}
+	
+	@Test
+	public void gradebooksInUseAreKept() {
+		GradebookVersions versions = new GradebookVersions();
+		long a = versions.bump("a");
+		versions.bump("b");
+		
+		versions.getVersion("c");
+		
+		assertEquals(3, versions.getSize());
+		assertEquals(a, versions.getVersion("a"));
+	}
+
+}
@@ -0,0 +1,70 @@
+package org.sakaiproject.gradebookng.business;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.gradebookng.tool.model.AssignmentIndex;
+import org.sakaiproject.gradebookng.tool.model.StudentGrades;
+
+public class StudentSearchIndexTest {
+	
+	private StudentSearchIndex index;
+	
+	@Before
+	public void setUp() {
+		AssignmentIndex assignmentIndex = new AssignmentIndex(GradeMatrixFixture.assignments());
+		List<StudentGrades> rows = new ArrayList<StudentGrades>();
+		rows.add(new StudentGrades(GradeMatrixFixture.student("u0", "jsmith", "John", "Smith"), assignmentIndex));
+		rows.add(new StudentGrades(GradeMatrixFixture.student("u1", "jsmith2", "Jane", "Smith-Jones"), assignmentIndex));
+		rows.add(new StudentGrades(GradeMatrixFixture.student("u2", "emile.zola", "\u00C9mile", "Zola"), assignmentIndex));
+		rows.add(new StudentGrades(GradeMatrixFixture.student("u3", "smithers", "Waylon", "Smithers"), assignmentIndex));
+		this.index = new StudentSearchIndex(rows);
+	}
+	
+	@Test
+	public void termsMatchTheStartOfAWord() {
+		assertEquals(rows(0, 1, 3), this.index.search("smith"));
+		assertEquals(rows(1), this.index.search("jones"));
+		assertEquals(rows(), this.index.search("mith"));
+	}
+	
+	@Test
+	public void everyTermMustMatch() {
+		assertEquals(rows(0, 1), this.index.search("smith j"));
+		assertEquals(rows(1), this.index.search("Smith, Jane"));
+	}
+	
+	@Test
+	public void ignoresCaseAndAccents() {
+		assertEquals(rows(2), this.index.search("EMILE"));
+		assertEquals(rows(2), this.index.search("\u00E9mi"));
+	}
+	
+	@Test
+	public void matchesTheWholeEid() {
+		assertEquals(rows(2), this.index.search("emile.zola"));
+		assertEquals(rows(1), this.index.search("jsmith2"));
+		assertEquals(rows(0, 1), this.index.search("jsmith"));
+	}
+	
+	@Test
+	public void emptySearchMatchesEverything() {
+		assertNull(this.index.search(""));
+		assertNull(this.index.search(" ,. "));
+	}
+	
+	private static BitSet rows(final int... positions) {
+		BitSet rval = new BitSet();
+		for(int position: positions) {
+			rval.set(position);
+		}
+		return rval;
+	}
+
+}
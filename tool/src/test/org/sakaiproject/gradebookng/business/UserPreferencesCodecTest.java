@@ -0,0 +1,71 @@
+package org.sakaiproject.gradebookng.business;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.sakaiproject.gradebookng.business.dto.GradebookUserPreferences;
+
+public class UserPreferencesCodecTest {
+	
+	@Test
+	public void roundTrip() {
+		GradebookUserPreferences prefs = new GradebookUserPreferences("user&1=x");
+		prefs.setSiteId("site/é 1");
+		prefs.setSortOrder(SortOrder.FIRST_NAME.getValue());
+		
+		String encoded = UserPreferencesCodec.encode(prefs);
+		GradebookUserPreferences decoded = UserPreferencesCodec.decode(encoded);
+		
+		assertEquals("user&1=x", decoded.getUserUuid());
+		assertEquals("site/é 1", decoded.getSiteId());
+		assertEquals(SortOrder.FIRST_NAME.getValue(), decoded.getSortOrder());
+	}
+	
+	@Test
+	public void missingValuesAreLeftOut() {
+		GradebookUserPreferences prefs = new GradebookUserPreferences("user1");
+		
+		assertEquals("v1&userUuid=user1&sortOrder=0", UserPreferencesCodec.encode(prefs));
+		assertNull(UserPreferencesCodec.decode("v1&userUuid=user1&sortOrder=0").getSiteId());
+	}
+	
+	@Test
+	public void readsXml() throws Exception {
+		GradebookUserPreferences prefs = new GradebookUserPreferences("user1");
+		prefs.setSiteId("site1");
+		prefs.setSortOrder(3);
+		
+		GradebookUserPreferences decoded = UserPreferencesCodec.decode(XmlMarshaller.marshal(prefs));
+		
+		assertEquals("user1", decoded.getUserUuid());
+		assertEquals("site1", decoded.getSiteId());
+		assertEquals(3, decoded.getSortOrder());
+	}
+	
+	@Test
+	public void emptyValues() {
+		assertNull(UserPreferencesCodec.decode(null));
+		assertNull(UserPreferencesCodec.decode(" "));
+	}
+	
+	@Test
+	public void corruptValues() {
+		assertNull(UserPreferencesCodec.decode("v2&userUuid=user1"));
+		assertNull(UserPreferencesCodec.decode("v1&sortOrder=x"));
+		assertNull(UserPreferencesCodec.decode("v1&sortOrder="));
+		assertNull(UserPreferencesCodec.decode("v1&sortOrder"));
+		assertNull(UserPreferencesCodec.decode("v1&userUuid=%zz"));
+		assertNull(UserPreferencesCodec.decode("<notxml"));
+		assertNull(UserPreferencesCodec.decode("&"));
+	}
+	
+	@Test
+	public void versionOnly() {
+		GradebookUserPreferences decoded = UserPreferencesCodec.decode("v1&");
+		
+		assertNull(decoded.getUserUuid());
+		assertEquals(0, decoded.getSortOrder());
+	}
+
+}